@@ -0,0 +1,70 @@
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Classe BufferPool che riusa ByteBuffer diretti della stessa dimensione, per
+ * evitare di allocarne uno nuovo a ogni lettura o scrittura su un canale.
+ * Conserva al più maxPooled buffer liberi; quelli restituiti oltre il limite
+ * vengono lasciati al garbage collector.
+ */
+final class BufferPool {
+    /**
+     * Dimensione di ciascun buffer, in byte.
+     */
+    private final int bufferSize;
+    /**
+     * Numero massimo di buffer liberi conservati.
+     */
+    private final int maxPooled;
+    /**
+     * Buffer liberi.
+     */
+    private final ConcurrentLinkedQueue<ByteBuffer> free = new ConcurrentLinkedQueue<ByteBuffer>();
+    /**
+     * Numero di buffer liberi.
+     */
+    private final AtomicInteger pooled = new AtomicInteger();
+
+    /**
+     * Costruttore di classe.
+     * @param bufferSize dimensione di ciascun buffer, in byte
+     * @param maxPooled numero massimo di buffer liberi conservati
+     */
+    BufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+    }
+
+    /**
+     * Restituisce la dimensione di ciascun buffer.
+     * @return bufferSize
+     */
+    int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Concede un buffer vuoto, riusandone uno libero se disponibile.
+     * @return buffer diretto pronto per la scrittura
+     */
+    ByteBuffer acquire() {
+        ByteBuffer buffer = free.poll();
+        if (buffer == null)
+            return ByteBuffer.allocateDirect(bufferSize);
+        pooled.decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Restituisce al pool un buffer concesso da acquire, che non va più usato.
+     * @param buffer buffer
+     */
+    void release(ByteBuffer buffer) {
+        if (pooled.incrementAndGet() <= maxPooled)
+            free.offer(buffer);
+        else
+            pooled.decrementAndGet();
+    }
+}
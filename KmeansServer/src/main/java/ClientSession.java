@@ -0,0 +1,166 @@
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import data.Data;
+import data.DataCache;
+import database.EmptySetException;
+import database.NoValueException;
+import mining.KmeansConfig;
+import mining.KmeansMiner;
+import mining.ModelCache;
+import mining.ProgressEvent;
+
+/**
+ * Classe ClientSession che mantiene lo stato della sessione di un client ed
+ * esegue le operazioni 1-4 del protocollo, indipendentemente dal modo in cui
+ * richieste e risposte viaggiano sulla connessione.
+ * È usata sia da ServerOneClient, con il protocollo a oggetti serializzati, sia
+ * da NioServer, con il protocollo binario.
+ */
+class ClientSession {
+    /**
+     * Oggetto KmeansMiner per l'esecuzione dell'algoritmo k-means.
+     */
+    KmeansMiner kmeans;
+    /**
+     * Oggetto Data per la memorizzazione dei dati, condiviso con le altre
+     * sessioni tramite DataCache e quindi da non modificare.
+     */
+    Data data;
+    /**
+     * Parametri di esecuzione dell'algoritmo k-means scelti dal client.
+     */
+    KmeansConfig config = new KmeansConfig();
+    /**
+     * Parametri di connessione della tabella da cui è stato caricato data:
+     * server, database, tabella, utente e password.
+     */
+    String[] source;
+    /**
+     * Intervallo minimo tra due invii dell'avanzamento al client, in millisecondi.
+     */
+    static final long PROGRESS_INTERVAL = 250;
+
+    /**
+     * Interfaccia ProgressSink per l'invio al client dell'avanzamento dell'algoritmo.
+     */
+    interface ProgressSink {
+        /**
+         * Invia al client l'avanzamento.
+         * @param event avanzamento
+         * @throws IOException eccezione per errore di I/O
+         */
+        void send(ProgressEvent event) throws IOException;
+    }
+
+    /**
+     * Restituisce il percorso del file del modello di nome fileName.
+     * @param fileName nome del modello scelto dal client
+     * @return percorso del file
+     */
+    static String modelPath(String fileName) {
+        return "KmeansServer\\KmeansServer\\DataStore\\" + fileName + ".dat";
+    }
+
+    /**
+     * Operazione 1: carica in data le transazioni della tabella table.
+     * @param server nome del server
+     * @param db nome del database
+     * @param table nome della tabella
+     * @param username nome utente per l'accesso al database
+     * @param password password per l'accesso al database
+     * @throws SQLException eccezione per errore SQL
+     * @throws NoValueException eccezione per valore non presente
+     * @throws EmptySetException eccezione per insieme vuoto
+     */
+    void storeTableFromDb(String server, String db, String table, String username, String password)
+            throws SQLException, NoValueException, EmptySetException {
+        data = DataCache.get(server, db, table, username, password);
+        source = new String[] {server, db, table, username, password};
+        System.out.println("[-] Cache dei dataset: " + DataCache.getHits() + " hit, "
+                + DataCache.getMisses() + " miss");
+    }
+
+    /**
+     * Operazione 2: esegue l'algoritmo k-means con k cluster su data, tramite WorkerPool.
+     * @param k numero di cluster
+     * @return numero di iterazioni
+     * @throws Exception eccezione sollevata dall'algoritmo, oppure
+     * RejectedExecutionException se WorkerPool rifiuta l'elaborazione
+     */
+    int learningFromDbTable(int k) throws Exception {
+        return learningFromDbTable(k, null);
+    }
+
+    /**
+     * Operazione 2: esegue l'algoritmo k-means con k cluster su data, tramite
+     * WorkerPool, inviando a sink l'avanzamento delle iterazioni.
+     * Il thread che esegue l'algoritmo si limita a conservare l'ultimo
+     * ProgressEvent; il thread della sessione lo passa a sink al più ogni
+     * PROGRESS_INTERVAL millisecondi, per cui un client lento non rallenta l'algoritmo.
+     * @param k numero di cluster
+     * @param sink destinatario dell'avanzamento, oppure null
+     * @return numero di iterazioni
+     * @throws Exception eccezione sollevata dall'algoritmo o da sink, oppure
+     * RejectedExecutionException se WorkerPool rifiuta l'elaborazione
+     */
+    int learningFromDbTable(int k, ProgressSink sink) throws Exception {
+        KmeansMiner miner = KmeansMiner.newMiner(k, config);
+        int numberOfIterations;
+        if (sink == null) {
+            numberOfIterations = WorkerPool.call(() -> miner.kmeans(data));
+        } else {
+            AtomicReference<ProgressEvent> latest = new AtomicReference<ProgressEvent>();
+            miner.setProgressListener(latest::set);
+            numberOfIterations = WorkerPool.call(() -> miner.kmeans(data), PROGRESS_INTERVAL, () -> {
+                ProgressEvent event = latest.getAndSet(null);
+                if (event != null)
+                    sink.send(event);
+            });
+        }
+        kmeans = miner;
+        System.out.println("[-] Numero di iterazioni: " + numberOfIterations + " (" + kmeans.getStopReason() + ")");
+        return numberOfIterations;
+    }
+
+    /**
+     * Restituisce l'esito dell'operazione 2: numero di iterazioni, criterio di
+     * arresto e cluster con le rispettive transazioni.
+     * @param numberOfIterations numero di iterazioni
+     * @return descrizione dei cluster appresi
+     */
+    String describeLearning(int numberOfIterations) {
+        return "Numero di iterazioni: " + numberOfIterations + " (" + kmeans.getStopReason() + ")\n"
+                + kmeans.getC().toString(data);
+    }
+
+    /**
+     * Operazione 3: salva i cluster appresi nel modello di nome fileName.
+     * @param fileName nome del modello
+     * @throws IOException eccezione per errore di I/O
+     */
+    void storeClusterInFile(String fileName) throws IOException {
+        System.out.println("[-] Salvataggio su file: " + fileName);
+        kmeans.salvaKmeansMiner(modelPath(fileName));
+    }
+
+    /**
+     * Operazione 4: carica il modello di nome fileName, tramite ModelCache.
+     * @param fileName nome del modello
+     * @throws IOException eccezione per errore di I/O
+     * @throws ClassNotFoundException eccezione per errore di cast
+     */
+    void learningFromFile(String fileName) throws IOException, ClassNotFoundException {
+        System.out.println("[-] Caricamento da file: " + fileName);
+        kmeans = ModelCache.get(modelPath(fileName));
+    }
+
+    /**
+     * Restituisce l'esito dell'operazione 4: i centroidi del modello caricato.
+     * @return descrizione dei centroidi
+     */
+    String describeModel() {
+        return "[-] Elenco Centroidi:\n" + kmeans.getC().toString();
+    }
+}
@@ -1,6 +1,17 @@
 import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import data.DataCache;
+import mining.KmeansConfig;
+import mining.ModelCache;
 
 /**
  * Classe MultiServer che si occupa di gestire la connessione con più client.
@@ -12,9 +23,30 @@ public class MultiServer {
     private int PORT = 8080;
     /**
      * Metodo main della classe MultiServer.
+     * Il grado di parallelismo dell'algoritmo k-means si imposta con la proprietà
+     * di sistema kmeans.parallelism (predefinito: numero di processori), la
+     * memoria massima della cache dei dataset con kmeans.cacheBytes
+     * (predefinito: un quarto della memoria massima della JVM), il numero
+     * massimo di modelli in cache con kmeans.modelCacheEntries (predefinito: 64),
+     * il numero di thread per le elaborazioni k-means con kmeans.workers
+     * (predefinito: numero di processori) e la lunghezza massima della loro coda
+     * con kmeans.jobQueue (predefinito: il doppio dei thread), il numero
+     * massimo di sessioni contemporanee con kmeans.sessions (predefinito: 256,
+     * per ciascun protocollo).
+     * Oltre al protocollo a oggetti serializzati sulla porta 8080, avvia NioServer
+     * con il protocollo binario sulla porta kmeans.nioPort (predefinita: 8081).
      * @param args argomenti passati da riga di comando
      */
     public static void main(String[] args) {
+        KmeansConfig.setDefaultParallelism(
+                Integer.getInteger("kmeans.parallelism", Runtime.getRuntime().availableProcessors()));
+        DataCache.setBudget(Long.getLong("kmeans.cacheBytes", Runtime.getRuntime().maxMemory() / 4));
+        ModelCache.setMaxEntries(Integer.getInteger("kmeans.modelCacheEntries", 64));
+        int workers = Integer.getInteger("kmeans.workers", Runtime.getRuntime().availableProcessors());
+        WorkerPool.configure(workers, Integer.getInteger("kmeans.jobQueue", 2 * workers));
+        Thread nio = new Thread(new NioServer(Integer.getInteger("kmeans.nioPort", 8081), newSessionExecutor()), "kmeans-nio");
+        nio.setDaemon(true);
+        nio.start();
         MultiServer server = new MultiServer(8080);
         server.run();
     }
@@ -27,20 +59,63 @@ public class MultiServer {
     }
     /**
      * Metodo run del Multiserver.
+     * Ogni connessione accettata è gestita da una sessione ServerOneClient
+     * eseguita dall'esecutore delle sessioni; se l'esecutore ha raggiunto il
+     * limite di sessioni, il client riceve WorkerPool.BUSY e la connessione viene chiusa.
      */
     public void run() {
+        ExecutorService sessions = newSessionExecutor();
         try (ServerSocket serverSocket = new ServerSocket(PORT)) {
             System.out.println("Server in ascolto sulla porta " + PORT + "...");
             while (true) {
                 Socket clientSocket = serverSocket.accept();
                 System.out.println("Nuova connessione accettata da " + clientSocket.getInetAddress());
 
-                ServerOneClient clientHandler = new ServerOneClient(clientSocket);
-                clientHandler.start();
+                try {
+                    sessions.execute(new ServerOneClient(clientSocket));
+                } catch (RejectedExecutionException e) {
+                    reject(clientSocket);
+                }
             }
         } catch (IOException e) {
             System.out.println("[!] Errori verificati durante l'esecuzione del server");
             // e.printStackTrace();
+        } finally {
+            sessions.shutdown();
+        }
+    }
+    /**
+     * Crea l'esecutore delle sessioni: un pool che riusa i thread delle sessioni
+     * terminate, con al più kmeans.sessions thread (predefinito: 256).
+     * Ogni sessione occupa un thread di piattaforma per tutta la durata della
+     * connessione; oltre il limite l'esecutore rifiuta le nuove sessioni con
+     * RejectedExecutionException.
+     * @return esecutore delle sessioni
+     */
+    static ExecutorService newSessionExecutor() {
+        AtomicInteger count = new AtomicInteger();
+        return new ThreadPoolExecutor(0, Integer.getInteger("kmeans.sessions", 256), 60, TimeUnit.SECONDS,
+                new SynchronousQueue<Runnable>(), r -> new Thread(r, "kmeans-session-" + count.incrementAndGet()),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+    /**
+     * Risponde con WorkerPool.BUSY a un client la cui sessione è stata rifiutata
+     * e chiude la connessione.
+     * @param socket socket per la connessione con il client
+     */
+    private static void reject(Socket socket) {
+        try {
+            ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream());
+            out.writeObject(WorkerPool.BUSY);
+            out.flush();
+        } catch (IOException e) {
+            System.out.println("[!] Errore nella comunicazione con il client");
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                System.out.println("[!] Errore nella chiusura delle risorse");
+            }
         }
     }
 }
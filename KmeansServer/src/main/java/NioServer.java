@@ -0,0 +1,508 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+import data.OutOfRangeSampleSize;
+import database.EmptySetException;
+import database.NoValueException;
+
+/**
+ * Classe NioServer che serve le operazioni 1-5 con un protocollo binario su
+ * canali non bloccanti, gestiti da un unico thread con un Selector.
+ * Ogni messaggio, in entrambe le direzioni, è preceduto dalla lunghezza in
+ * byte del suo contenuto (int a 32 bit, big-endian). Gli interi sono a 32 bit
+ * big-endian, le stringhe sono la lunghezza in byte seguita dalla codifica UTF-8.
+ * Una richiesta contiene il codice dell'operazione (un byte) seguito dai campi:
+ * 1: server, database, tabella, utente, password; 2: k; 3: nome del modello;
+ * 4: nome del modello, k; 5: nessuno, e il server chiude la connessione senza rispondere.
+ * Una risposta contiene un byte di esito, OK o ERROR; dopo ERROR segue il
+ * messaggio di errore, dopo OK i campi dell'operazione: 1: descrizione del
+ * dataset; 2: numero di iterazioni, descrizione dei cluster; 3: nessuno;
+ * 4: k, elenco dei centroidi.
+ * Le operazioni sono eseguite fuori dal thread del Selector, una alla volta per
+ * connessione, tramite ClientSession; letture e scritture usano buffer diretti
+ * presi da un BufferPool.
+ */
+class NioServer implements Runnable {
+    /**
+     * Esito di una risposta con successo.
+     */
+    static final byte OK = 0;
+    /**
+     * Esito di una risposta con errore.
+     */
+    static final byte ERROR = 1;
+    /**
+     * Dimensione dei buffer di lettura e scrittura, che limita anche la lunghezza di una richiesta.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+    /**
+     * Numero massimo di buffer liberi conservati dal pool.
+     */
+    private static final int POOLED_BUFFERS = 256;
+
+    /**
+     * Porta di ascolto del server.
+     */
+    private final int port;
+    /**
+     * Esecutore delle operazioni richieste dai client.
+     */
+    private final ExecutorService sessions;
+    /**
+     * Buffer diretti per letture e scritture.
+     */
+    private final BufferPool buffers = new BufferPool(BUFFER_SIZE, POOLED_BUFFERS);
+    /**
+     * Connessioni con una risposta pronta da scrivere.
+     */
+    private final ConcurrentLinkedQueue<Connection> completed = new ConcurrentLinkedQueue<Connection>();
+    /**
+     * Selector dei canali.
+     */
+    private Selector selector;
+
+    /**
+     * Connessione con un client.
+     * I campi sono usati dal solo thread del Selector, tranne response, scritto
+     * dall'esecutore prima di accodare la connessione in completed.
+     */
+    private static final class Connection {
+        /**
+         * Canale della connessione.
+         */
+        final SocketChannel channel;
+        /**
+         * Stato della sessione del client.
+         */
+        final ClientSession session = new ClientSession();
+        /**
+         * Chiave del canale nel Selector.
+         */
+        SelectionKey key;
+        /**
+         * Byte ricevuti e non ancora elaborati, in modalità scrittura.
+         */
+        ByteBuffer input;
+        /**
+         * Parte della risposta copiata nel buffer diretto e non ancora scritta, in modalità lettura.
+         */
+        ByteBuffer output;
+        /**
+         * Risposta da scrivere, compresa la lunghezza.
+         */
+        volatile ByteBuffer response;
+        /**
+         * Vale true mentre un'operazione è in esecuzione o la sua risposta è in scrittura.
+         */
+        boolean busy;
+
+        /**
+         * Costruttore di classe.
+         * @param channel canale della connessione
+         */
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    /**
+     * Messaggio in costruzione, con i primi quattro byte riservati alla lunghezza.
+     */
+    private static final class Frame extends ByteArrayOutputStream {
+        /**
+         * Flusso per scrivere i campi del messaggio.
+         */
+        final DataOutputStream out = new DataOutputStream(this);
+
+        /**
+         * Costruttore di classe.
+         * @param status esito della risposta
+         */
+        Frame(byte status) {
+            super(256);
+            count = 4;
+            write(status);
+        }
+
+        /**
+         * Scrive una stringa come lunghezza in byte seguita dalla codifica UTF-8.
+         * @param s stringa
+         * @return this
+         * @throws IOException eccezione per errore di I/O
+         */
+        Frame writeString(String s) throws IOException {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+            return this;
+        }
+
+        /**
+         * Scrive un intero a 32 bit.
+         * @param v valore
+         * @return this
+         * @throws IOException eccezione per errore di I/O
+         */
+        Frame writeInt(int v) throws IOException {
+            out.writeInt(v);
+            return this;
+        }
+
+        /**
+         * Completa il messaggio con la lunghezza, senza copiarne il contenuto.
+         * @return messaggio pronto per la scrittura
+         */
+        ByteBuffer toBuffer() {
+            ByteBuffer buffer = ByteBuffer.wrap(buf, 0, count);
+            buffer.putInt(0, count - 4);
+            return buffer;
+        }
+    }
+
+    /**
+     * Costruttore di classe.
+     * @param port porta di ascolto
+     * @param sessions esecutore delle operazioni richieste dai client
+     */
+    NioServer(int port, ExecutorService sessions) {
+        this.port = port;
+        this.sessions = sessions;
+    }
+
+    /**
+     * Accetta le connessioni ed esegue le letture e le scritture pronte finché
+     * il canale del server resta aperto.
+     */
+    public void run() {
+        try (Selector sel = Selector.open(); ServerSocketChannel server = ServerSocketChannel.open()) {
+            selector = sel;
+            server.bind(new InetSocketAddress(port));
+            server.configureBlocking(false);
+            server.register(sel, SelectionKey.OP_ACCEPT);
+            System.out.println("Server NIO in ascolto sulla porta " + port + "...");
+            while (true) {
+                sel.select();
+                Connection done;
+                while ((done = completed.poll()) != null)
+                    startWrite(done);
+                Iterator<SelectionKey> it = sel.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (!key.isValid())
+                        continue;
+                    if (key.isAcceptable()) {
+                        accept(server);
+                        continue;
+                    }
+                    Connection connection = (Connection) key.attachment();
+                    try {
+                        if (key.isReadable())
+                            read(connection);
+                        else if (key.isWritable())
+                            write(connection);
+                    } catch (IOException e) {
+                        close(connection);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("[!] Errori verificati durante l'esecuzione del server NIO");
+        } finally {
+            sessions.shutdown();
+        }
+    }
+
+    /**
+     * Accetta una connessione e la registra per la lettura.
+     * @param server canale del server
+     */
+    private void accept(ServerSocketChannel server) {
+        SocketChannel channel = null;
+        try {
+            channel = server.accept();
+            if (channel == null)
+                return;
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            System.out.println("Nuova connessione NIO accettata da " + channel.getRemoteAddress());
+            Connection connection = new Connection(channel);
+            connection.input = buffers.acquire();
+            connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+        } catch (IOException e) {
+            System.out.println("[!] Errore nell'accettazione della connessione");
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                    // la connessione non è mai stata usata
+                }
+            }
+        }
+    }
+
+    /**
+     * Legge i byte disponibili ed elabora la richiesta se è completa.
+     * @param connection connessione
+     * @throws IOException eccezione per errore di I/O
+     */
+    private void read(Connection connection) throws IOException {
+        if (connection.channel.read(connection.input) < 0) {
+            close(connection);
+            return;
+        }
+        processInput(connection);
+    }
+
+    /**
+     * Se la connessione non ha operazioni in corso e i byte ricevuti contengono
+     * una richiesta completa, la estrae e la affida all'esecutore.
+     * Una richiesta più lunga del buffer di lettura chiude la connessione.
+     * @param connection connessione
+     */
+    private void processInput(Connection connection) {
+        if (connection.busy || !connection.channel.isOpen())
+            return;
+        ByteBuffer input = connection.input;
+        input.flip();
+        if (input.remaining() >= 4) {
+            int length = input.getInt(input.position());
+            if (length < 1 || length > BUFFER_SIZE - 4) {
+                input.compact();
+                close(connection);
+                return;
+            }
+            if (input.remaining() >= 4 + length) {
+                input.getInt();
+                byte[] request = new byte[length];
+                input.get(request);
+                input.compact();
+                dispatch(connection, request);
+                return;
+            }
+        }
+        input.compact();
+    }
+
+    /**
+     * Esegue la richiesta request della connessione sull'esecutore, sospendendo
+     * le letture finché la risposta non è stata scritta. Se l'esecutore rifiuta
+     * la richiesta, la risposta è l'errore WorkerPool.BUSY.
+     * @param connection connessione
+     * @param request richiesta, senza la lunghezza
+     */
+    private void dispatch(Connection connection, byte[] request) {
+        if (request[0] == 5) {
+            close(connection);
+            return;
+        }
+        connection.busy = true;
+        connection.key.interestOps(0);
+        try {
+            sessions.execute(() -> {
+                try {
+                    connection.response = execute(connection.session, request);
+                } catch (RuntimeException e) {
+                    connection.response = error("[!] Errore di natura generica");
+                }
+                completed.add(connection);
+                selector.wakeup();
+            });
+        } catch (RejectedExecutionException e) {
+            connection.response = error(WorkerPool.BUSY);
+            completed.add(connection);
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Inizia la scrittura della risposta pronta di una connessione.
+     * @param connection connessione
+     */
+    private void startWrite(Connection connection) {
+        if (!connection.channel.isOpen())
+            return;
+        connection.output = buffers.acquire();
+        connection.output.flip();
+        connection.key.interestOps(SelectionKey.OP_WRITE);
+        try {
+            write(connection);
+        } catch (IOException e) {
+            close(connection);
+        }
+    }
+
+    /**
+     * Scrive la risposta finché il canale la accetta, copiandola a blocchi nel
+     * buffer diretto; terminata la risposta, riprende le letture.
+     * @param connection connessione
+     * @throws IOException eccezione per errore di I/O
+     */
+    private void write(Connection connection) throws IOException {
+        ByteBuffer output = connection.output;
+        ByteBuffer response = connection.response;
+        while (true) {
+            if (!output.hasRemaining()) {
+                if (!response.hasRemaining()) {
+                    buffers.release(output);
+                    connection.output = null;
+                    connection.response = null;
+                    connection.busy = false;
+                    connection.key.interestOps(SelectionKey.OP_READ);
+                    processInput(connection);
+                    return;
+                }
+                output.clear();
+                int n = Math.min(output.remaining(), response.remaining());
+                ByteBuffer chunk = response.duplicate();
+                chunk.limit(chunk.position() + n);
+                output.put(chunk);
+                response.position(response.position() + n);
+                output.flip();
+            }
+            if (connection.channel.write(output) == 0)
+                return;
+        }
+    }
+
+    /**
+     * Chiude la connessione e restituisce i suoi buffer al pool.
+     * @param connection connessione
+     */
+    private void close(Connection connection) {
+        connection.key.cancel();
+        try {
+            connection.channel.close();
+        } catch (IOException e) {
+            System.out.println("[!] Errore nella chiusura della connessione");
+        }
+        if (connection.input != null) {
+            buffers.release(connection.input);
+            connection.input = null;
+        }
+        if (connection.output != null) {
+            buffers.release(connection.output);
+            connection.output = null;
+        }
+        System.out.println("[-] Connessione NIO terminata");
+    }
+
+    /**
+     * Esegue l'operazione richiesta con lo stato di session e ne costruisce la risposta.
+     * @param session stato della sessione del client
+     * @param request richiesta: codice dell'operazione seguito dai campi
+     * @return risposta, compresa la lunghezza
+     */
+    private static ByteBuffer execute(ClientSession session, byte[] request) {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(request, 1, request.length - 1));
+        int scelta = request[0];
+        System.out.println("Scelta: " + scelta);
+        try {
+            switch (scelta) {
+                case 1: // Opzione storeTableFromDb
+                {
+                    String server = readString(in);
+                    String db = readString(in);
+                    String tableName = readString(in);
+                    String username = readString(in);
+                    String password = readString(in);
+                    try {
+                        session.storeTableFromDb(server, db, tableName, username, password);
+                    } catch (SQLException | NoValueException | EmptySetException e) {
+                        return error("[!] Errore di connessione al database");
+                    } catch (RuntimeException e) {
+                        return error("[!] Errore durante il caricamento dei dati");
+                    }
+                    return new Frame(OK).writeString(session.data.toString()).toBuffer();
+                }
+                case 2: // Operazione learningFromDbTable
+                {
+                    int k = in.readInt();
+                    int numberOfIterations;
+                    try {
+                        numberOfIterations = session.learningFromDbTable(k);
+                    } catch (OutOfRangeSampleSize e) {
+                        return error("[!]" + e.getMessage());
+                    } catch (RejectedExecutionException e) {
+                        return error(WorkerPool.BUSY);
+                    } catch (Exception e) {
+                        return error("[!] Errore durante l'esecuzione dell'algoritmo k-means");
+                    }
+                    return new Frame(OK).writeInt(numberOfIterations)
+                            .writeString(session.describeLearning(numberOfIterations)).toBuffer();
+                }
+                case 3: // Opzione storeClusterInFile
+                {
+                    String fileName = readString(in);
+                    try {
+                        session.storeClusterInFile(fileName);
+                    } catch (Exception e) {
+                        return error("[!] Errore durante il salvataggio dei dati");
+                    }
+                    return new Frame(OK).toBuffer();
+                }
+                case 4: // Opzione learningFromFile
+                {
+                    String fileName = readString(in);
+                    int k = in.readInt();
+                    try {
+                        session.learningFromFile(fileName);
+                    } catch (IOException | ClassNotFoundException e) {
+                        return error("[!] Errore durante il caricamento dei dati");
+                    }
+                    return new Frame(OK).writeInt(k).writeString(session.describeModel()).toBuffer();
+                }
+                default:
+                    return error("[!] Errore nella scelta dell'operazione");
+            }
+        } catch (IOException e) {
+            return error("[!] Richiesta non valida");
+        }
+    }
+
+    /**
+     * Costruisce una risposta di errore.
+     * @param message messaggio di errore
+     * @return risposta, compresa la lunghezza
+     */
+    private static ByteBuffer error(String message) {
+        try {
+            return new Frame(ERROR).writeString(message).toBuffer();
+        } catch (IOException e) {
+            // la scrittura in memoria non solleva eccezioni
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Legge una stringa scritta come lunghezza in byte seguita dalla codifica UTF-8.
+     * @param in flusso della richiesta
+     * @return stringa
+     * @throws IOException se la richiesta è troncata o la lunghezza non è valida
+     */
+    private static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > BUFFER_SIZE)
+            throw new IOException("Lunghezza non valida: " + length);
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
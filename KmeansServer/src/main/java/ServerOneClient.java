@@ -3,17 +3,30 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.net.Socket;
 import java.sql.SQLException;
+import java.util.concurrent.RejectedExecutionException;
 
-import data.Data;
+import data.DataCache;
+import data.DataRefresh;
+import data.DataSnapshot;
 import data.OutOfRangeSampleSize;
+import database.DatabaseConnectionException;
+import database.DbAccess;
 import database.EmptySetException;
 import database.NoValueException;
+import mining.AssignmentExport;
+import mining.KSelection;
 import mining.KmeansMiner;
+import mining.MemberPage;
+import mining.ModelCache;
 
 /**
- * Classe ServerOneClient che si occupa di gestire la connessione con un client.
+ * Classe ServerOneClient che si occupa di gestire la connessione con un client
+ * con il protocollo a oggetti serializzati.
+ * La sessione è eseguita dall'esecutore delle sessioni di MultiServer, mentre
+ * le elaborazioni più onerose sono affidate a WorkerPool; le operazioni 1-4
+ * sono condivise con NioServer tramite ClientSession.
  */
-public class ServerOneClient extends Thread {
+public class ServerOneClient extends ClientSession implements Runnable {
     /**
      * Socket per la connessione con il client.
      */
@@ -26,29 +39,19 @@ public class ServerOneClient extends Thread {
      * Stream di output per la comunicazione con il client.
      */
     ObjectOutputStream out;
-    /**
-     * Oggetto KmeansMiner per l'esecuzione dell'algoritmo k-means.
-     */
-    KmeansMiner kmeans;
-    /**
-     * Oggetto Data per la memorizzazione dei dati.
-     */
-    Data data;
 
     /**
      * Costruttore della classe ServerOneClient.
-     * Inizializza gli attributi socket, out, in e kmeans.
-     * E avvia il thread.
+     * Inizializza l'attributo socket; gli stream sono aperti da run, così che
+     * l'attesa dell'intestazione del client non blocchi chi accetta le connessioni.
      * @param s socket per la connessione con il client.
-     * @throws IOException eccezione per errore di I/O
      */
-    public ServerOneClient(Socket s) throws IOException {
+    public ServerOneClient(Socket s) {
         socket = s;
-        out = new ObjectOutputStream(socket.getOutputStream());
-        in = new ObjectInputStream(socket.getInputStream());
     }
     /**
-     * Rscrive il metodo run della superclasse Thread.
+     * Implementa il metodo run dell'interfaccia Runnable.
+     * Apre gli stream di comunicazione con il client.
      * Si occupa di gestire la richiesta del client.
      * Riceve la scelta dell'operazione dal client.
      * Processa la richiesta del client.
@@ -57,12 +60,37 @@ public class ServerOneClient extends Thread {
      * Nel caso 3, riceve il nome del file dal client e salva i dati su file.
      * Nel caso 4, riceve il nome del file dal client e carica i dati da file.
      * Nel caso 5, chiude la connessione.
+     * Nel caso 6, riceve il nome e il valore di un parametro dell'algoritmo k-means.
+     * Nel caso 7, riceve un intervallo di numeri di cluster, esegue l'algoritmo
+     * k-means per ciascuno e invia i risultati con il numero di cluster suggerito.
+     * Nel caso 8, riceve il nome di una colonna chiave (o una stringa vuota) e
+     * aggiorna il dataset con le modifiche della tabella, per chiave o per checksum.
+     * Nel caso 9, riceve il nome del file dal client e vi salva lo snapshot del dataset.
+     * Nel caso 10, riceve il nome del file dal client e carica il dataset dallo snapshot.
+     * Nel caso 11, riceve il nome di un modello salvato e un blocco di transazioni
+     * e invia, per ciascuna, l'indice del cluster più vicino e la distanza dal suo centroide.
+     * Nel caso 12, riceve il nome di una tabella e vi scrive, per ciascuna transazione
+     * del dataset, il cluster appreso nel caso 2 e la distanza dal suo centroide.
+     * Nel caso 13, riceve il nome di un modello salvato, di una tabella di origine,
+     * della sua colonna chiave e di una tabella di destinazione; assegna ai cluster
+     * del modello tutte le righe della tabella di origine e scrive l'esito nella
+     * tabella di destinazione. I casi 12 e 13 usano il database del caso 1.
+     * Nel caso 14, riceve l'indice di un cluster appreso nel caso 2, una posizione
+     * e un numero massimo di transazioni e invia la pagina corrispondente delle
+     * transazioni del cluster, come MemberPage.
+     * Se il parametro structuredResult è impostato, il caso 2 invia l'esito come
+     * ClusteringResult, senza le transazioni, che il client richiede con il caso 14.
+     * Se il parametro progress è impostato, durante il caso 2 il server invia
+     * l'avanzamento delle iterazioni come ProgressEvent, al più uno ogni
+     * PROGRESS_INTERVAL millisecondi, prima della risposta.
      */
     public void run() {
         String risposta;
         int scelta;
         int k, numberOfIterations;
         try {
+            out = new ObjectOutputStream(socket.getOutputStream());
+            in = new ObjectInputStream(socket.getInputStream());
             while (true) {
                 risposta = "OK";
                 // Ricevi la scelta dell'operazione dal client
@@ -85,7 +113,7 @@ public class ServerOneClient extends Thread {
                             String username = (String) in.readObject();
                             String password = (String) in.readObject();
                             try {
-                                data = new Data(server, db, tableName, username, password);
+                                storeTableFromDb(server, db, tableName, username, password);
                             } catch (SQLException | NoValueException | EmptySetException e) {
                                 risposta = "[!] Errore di connessione al database";
                                 out.writeObject(risposta);
@@ -117,13 +145,17 @@ public class ServerOneClient extends Thread {
                          */
                         try {
                             k = (int) in.readObject();
-                            kmeans = new KmeansMiner(k);
-                            numberOfIterations = kmeans.kmeans(data);
-                            System.out.println("[-] Numero di iterazioni: " + numberOfIterations);
+                            numberOfIterations = learningFromDbTable(k, config.isProgress() ? event -> {
+                                out.writeObject(event);
+                                out.flush();
+                            } : null);
                         } catch (OutOfRangeSampleSize e) {
                             risposta = "[!]" + e.getMessage();
                             out.writeObject(risposta);
                             break;
+                        } catch (RejectedExecutionException e) {
+                            out.writeObject(WorkerPool.BUSY);
+                            break;
                         } catch (Exception e) {
                             risposta = "[!] Errore durante l'esecuzione dell'algoritmo k-means";
                             out.writeObject(risposta);
@@ -132,9 +164,11 @@ public class ServerOneClient extends Thread {
                         try {
                             out.writeObject(risposta);
                             // Invia il numero di iterazioni al client prima del risultato
-                            out.writeObject(k);
-                            risposta = "Numero di iterazioni: " + k + "\n";
-                            out.writeObject(risposta + kmeans.getC().toString(data));
+                            out.writeObject(numberOfIterations);
+                            if (config.isStructuredResult())
+                                out.writeObject(kmeans.getResult(data, numberOfIterations));
+                            else
+                                out.writeObject(describeLearning(numberOfIterations));
                         } catch (IOException e) {
                             risposta = "[!] Errore nella comunicazione con il client";
                             out.writeObject(risposta);
@@ -152,8 +186,7 @@ public class ServerOneClient extends Thread {
                     {
                         try {
                             String fileName = (String) in.readObject();
-                            System.out.println("[-] Salvataggio su file: " + fileName);
-                            kmeans.salvaKmeansMiner("KmeansServer\\KmeansServer\\DataStore\\" + fileName + ".dat");
+                            storeClusterInFile(fileName);
                             out.writeObject(risposta);
                         } catch (Exception e) {
                             risposta = "[!] Errore durante il salvataggio dei dati";
@@ -174,8 +207,7 @@ public class ServerOneClient extends Thread {
                             String fileName = (String) in.readObject();
                             k = (int) in.readObject();
                             //System.out.println("[-] Caricamento da file: " + numberOfIterations);
-                            System.out.println("[-] Caricamento da file: " + fileName);
-                            kmeans = new KmeansMiner("KmeansServer\\KmeansServer\\DataStore\\" + fileName + ".dat");
+                            learningFromFile(fileName);
                         } catch (IOException | ClassNotFoundException e) {
                             risposta = "[!] Errore durante il caricamento dei dati";
                             out.writeObject(risposta);
@@ -185,7 +217,7 @@ public class ServerOneClient extends Thread {
                         try {
                             // Invia il numero di iterazioni prima del risultato
                             out.writeObject(k);
-                            out.writeObject("[-] Elenco Centroidi:\n" + kmeans.getC().toString());
+                            out.writeObject(describeModel());
                         } catch (IOException e) {
                             risposta = "[!] Errore nella comunicazione con il client";
                             out.writeObject(risposta);
@@ -193,6 +225,244 @@ public class ServerOneClient extends Thread {
                         }
                         break;
                     }
+                    case 6: // Opzione impostazione di un parametro
+                    {
+                        /*
+                         * Ricevi il nome e il valore del parametro
+                         * Aggiorna i parametri usati dalle successive esecuzioni
+                         */
+                        String name = (String) in.readObject();
+                        Object value = in.readObject();
+                        try {
+                            config.set(name, value);
+                            System.out.println("[-] Parametro " + name + " = " + value);
+                        } catch (IllegalArgumentException e) {
+                            risposta = "[!] " + e.getMessage();
+                        }
+                        out.writeObject(risposta);
+                        break;
+                    }
+                    case 7: // Opzione scelta del numero di cluster
+                    {
+                        /*
+                         * Ricevi il numero minimo e massimo di cluster dal client
+                         * Esegui l'algoritmo k-means per ogni numero di cluster
+                         * Invia i risultati al client
+                         */
+                        int kMin = (int) in.readObject();
+                        int kMax = (int) in.readObject();
+                        KSelection selection;
+                        try {
+                            selection = WorkerPool.call(() -> KSelection.sweep(data, kMin, kMax, config));
+                            System.out.println("[-] k suggerito: " + selection.getRecommendedK());
+                        } catch (OutOfRangeSampleSize e) {
+                            risposta = "[!]" + e.getMessage();
+                            out.writeObject(risposta);
+                            break;
+                        } catch (RejectedExecutionException e) {
+                            out.writeObject(WorkerPool.BUSY);
+                            break;
+                        } catch (Exception e) {
+                            risposta = "[!] Errore durante l'esecuzione dell'algoritmo k-means";
+                            out.writeObject(risposta);
+                            break;
+                        }
+                        out.writeObject(risposta);
+                        out.writeObject(selection.getRecommendedK());
+                        out.writeObject(selection.toString());
+                        break;
+                    }
+                    case 8: // Opzione aggiornamento incrementale del dataset
+                    {
+                        /*
+                         * Ricevi la colonna chiave dal client, vuota per il confronto per checksum
+                         * Unisci al dataset le transazioni aggiunte o modificate
+                         * Invia il riepilogo e il dataset aggiornato al client
+                         */
+                        String keyColumn = (String) in.readObject();
+                        if (source == null) {
+                            out.writeObject("[!] Nessun dataset caricato dal database");
+                            break;
+                        }
+                        DataRefresh refresh = new DataRefresh(data, source[0], source[1], source[2], source[3], source[4]);
+                        try {
+                            data = keyColumn == null || keyColumn.isEmpty() ? refresh.byChecksum() : refresh.byKey(keyColumn);
+                            DataCache.put(source[0], source[1], source[2], data);
+                            // i cluster appresi si riferiscono alle transazioni del dataset precedente
+                            kmeans = null;
+                        } catch (SQLException e) {
+                            out.writeObject("[!] " + e.getMessage());
+                            break;
+                        }
+                        out.writeObject(risposta);
+                        out.writeObject("Transazioni aggiunte: " + refresh.getAdded() + ", rimosse: " + refresh.getRemoved()
+                                + "\n" + data.toString());
+                        break;
+                    }
+                    case 9: // Opzione salvataggio dello snapshot del dataset
+                    {
+                        String fileName = (String) in.readObject();
+                        try {
+                            System.out.println("[-] Salvataggio dello snapshot: " + fileName);
+                            DataSnapshot.save(data, "KmeansServer\\KmeansServer\\DataStore\\" + fileName + ".snap");
+                        } catch (Exception e) {
+                            risposta = "[!] Errore durante il salvataggio dello snapshot";
+                        }
+                        out.writeObject(risposta);
+                        break;
+                    }
+                    case 10: // Opzione caricamento del dataset da snapshot
+                    {
+                        /*
+                         * Ricevi il nome del file dal client
+                         * Carica il dataset dallo snapshot, senza accedere al database
+                         * Invia il dataset al client
+                         */
+                        String fileName = (String) in.readObject();
+                        try {
+                            System.out.println("[-] Caricamento dello snapshot: " + fileName);
+                            data = DataSnapshot.load("KmeansServer\\KmeansServer\\DataStore\\" + fileName + ".snap");
+                            source = null;
+                            kmeans = null;
+                        } catch (IOException e) {
+                            out.writeObject("[!] Errore durante il caricamento dello snapshot");
+                            break;
+                        }
+                        out.writeObject(risposta);
+                        out.writeObject(data.toString());
+                        break;
+                    }
+                    case 11: // Opzione assegnamento di transazioni ai cluster di un modello salvato
+                    {
+                        /*
+                         * Ricevi il nome del modello e le transazioni dal client
+                         * Assegna le transazioni ai cluster del modello, senza modificarlo
+                         * Invia gli indici dei cluster e le distanze al client
+                         */
+                        String fileName = (String) in.readObject();
+                        Object[][] rows = (Object[][]) in.readObject();
+                        int[] clusters;
+                        double[] distances = new double[rows.length];
+                        try {
+                            KmeansMiner model = ModelCache.get(modelPath(fileName));
+                            clusters = WorkerPool.call(() -> model.predict(rows, distances));
+                        } catch (IOException | ClassNotFoundException e) {
+                            out.writeObject("[!] Errore durante il caricamento del modello");
+                            break;
+                        } catch (RejectedExecutionException e) {
+                            out.writeObject(WorkerPool.BUSY);
+                            break;
+                        } catch (IllegalArgumentException e) {
+                            out.writeObject("[!] " + e.getMessage());
+                            break;
+                        } catch (Exception e) {
+                            out.writeObject("[!] Errore durante l'assegnamento delle transazioni");
+                            break;
+                        }
+                        out.writeObject(risposta);
+                        out.writeObject(clusters);
+                        out.writeObject(distances);
+                        break;
+                    }
+                    case 12: // Opzione scrittura dell'assegnamento nel database
+                    {
+                        /*
+                         * Ricevi il nome della tabella di destinazione dal client
+                         * Scrivi cluster e distanza di ciascuna transazione del dataset
+                         * Invia il numero di righe scritte al client
+                         */
+                        String table = (String) in.readObject();
+                        if (source == null || kmeans == null) {
+                            out.writeObject("[!] Nessun modello appreso da un dataset del database");
+                            break;
+                        }
+                        DbAccess db = new DbAccess(source[0], source[1], source[3], source[4]);
+                        int rows;
+                        try {
+                            db.initConnection();
+                            try {
+                                rows = AssignmentExport.writeAssignment(kmeans, data, db, table, config);
+                            } finally {
+                                db.closeConnection();
+                            }
+                        } catch (DatabaseConnectionException | SQLException | IllegalArgumentException e) {
+                            out.writeObject("[!] " + e.getMessage());
+                            break;
+                        }
+                        out.writeObject(risposta);
+                        out.writeObject(rows);
+                        break;
+                    }
+                    case 13: // Opzione assegnamento di una tabella ai cluster di un modello salvato
+                    {
+                        /*
+                         * Ricevi dal client il nome del modello, della tabella di origine,
+                         * della colonna chiave e della tabella di destinazione
+                         * Leggi la tabella di origine a blocchi e scrivi cluster e distanza di ciascuna riga
+                         * Invia il numero di righe scritte al client
+                         */
+                        String fileName = (String) in.readObject();
+                        String sourceTable = (String) in.readObject();
+                        String keyColumn = (String) in.readObject();
+                        String targetTable = (String) in.readObject();
+                        if (source == null) {
+                            out.writeObject("[!] Nessun database selezionato");
+                            break;
+                        }
+                        DbAccess reader = new DbAccess(source[0], source[1], source[3], source[4]);
+                        DbAccess writer = new DbAccess(source[0], source[1], source[3], source[4]);
+                        int rows;
+                        try {
+                            KmeansMiner model = ModelCache.get(modelPath(fileName));
+                            reader.initConnection();
+                            try {
+                                writer.initConnection();
+                                try {
+                                    rows = AssignmentExport.scoreTable(model, reader, sourceTable, keyColumn, writer,
+                                            targetTable, config);
+                                } finally {
+                                    writer.closeConnection();
+                                }
+                            } finally {
+                                reader.closeConnection();
+                            }
+                        } catch (IOException | ClassNotFoundException e) {
+                            out.writeObject("[!] Errore durante il caricamento del modello");
+                            break;
+                        } catch (DatabaseConnectionException | SQLException | IllegalArgumentException e) {
+                            out.writeObject("[!] " + e.getMessage());
+                            break;
+                        }
+                        out.writeObject(risposta);
+                        out.writeObject(rows);
+                        break;
+                    }
+                    case 14: // Opzione pagina delle transazioni di un cluster
+                    {
+                        /*
+                         * Ricevi dal client l'indice del cluster, la posizione e il numero di transazioni
+                         * Invia la pagina di transazioni al client
+                         */
+                        int cluster = (int) in.readObject();
+                        int offset = (int) in.readObject();
+                        int limit = (int) in.readObject();
+                        if (kmeans == null || data == null) {
+                            out.writeObject("[!] Nessun modello appreso dal dataset corrente");
+                            break;
+                        }
+                        MemberPage page;
+                        try {
+                            page = kmeans.getMembers(data, cluster, offset, limit);
+                        } catch (IllegalArgumentException e) {
+                            out.writeObject("[!] " + e.getMessage());
+                            break;
+                        }
+                        out.writeObject(risposta);
+                        out.writeObject(page);
+                        // le pagine inviate non restano referenziate dallo stream
+                        out.reset();
+                        break;
+                    }
                     // Opzione di chiusura della connessione
                     default:
                         risposta = "[!] Errore nella scelta dell'operazione";
@@ -206,10 +476,13 @@ public class ServerOneClient extends Thread {
             // Chiudi le risorse in caso di terminazione del thread
             try {
                 risposta = "[-] Connessione Terminata";
-                out.writeObject(risposta);
+                if (out != null) {
+                    out.writeObject(risposta);
+                    out.close();
+                }
                 System.out.println(risposta);
-                out.close();
-                in.close();
+                if (in != null)
+                    in.close();
                 socket.close();
             } catch (IOException e) {
                 System.out.println("[!] Errore nella chiusura delle risorse");
@@ -0,0 +1,141 @@
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Classe WorkerPool che esegue le elaborazioni più onerose delle sessioni, come
+ * l'algoritmo k-means, su un numero limitato di thread.
+ * Le elaborazioni che non trovano un thread libero attendono in una coda di
+ * lunghezza limitata; quando anche la coda è piena l'elaborazione viene
+ * rifiutata e la sessione risponde al client con il messaggio BUSY.
+ * Le elaborazioni annullate, ad esempio perché il client si è disconnesso,
+ * liberano il thread entro un'iterazione dell'algoritmo k-means.
+ */
+final class WorkerPool {
+    /**
+     * Risposta inviata al client quando un'elaborazione viene rifiutata.
+     */
+    static final String BUSY = "[!] Server occupato: riprovare più tardi";
+    /**
+     * Esecutore delle elaborazioni, creato al primo uso o da configure.
+     */
+    private static ThreadPoolExecutor executor;
+
+    /**
+     * Costruttore privato: la classe ha solo metodi statici.
+     */
+    private WorkerPool() {
+    }
+
+    /**
+     * Imposta il numero di thread e la lunghezza massima della coda delle elaborazioni.
+     * Va chiamato prima della prima elaborazione.
+     * @param workers numero di thread, almeno 1
+     * @param queueLength numero massimo di elaborazioni in attesa, almeno 1
+     */
+    static synchronized void configure(int workers, int queueLength) {
+        if (workers < 1 || queueLength < 1)
+            throw new IllegalArgumentException("Thread e coda delle elaborazioni devono essere maggiori di 0");
+        if (executor != null)
+            executor.shutdown();
+        AtomicInteger count = new AtomicInteger();
+        executor = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueLength), r -> {
+                    Thread t = new Thread(r, "kmeans-worker-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Restituisce l'esecutore, creandolo con un thread per processore e una
+     * coda lunga il doppio se non è stato configurato.
+     * @return esecutore delle elaborazioni
+     */
+    private static synchronized ThreadPoolExecutor get() {
+        if (executor == null) {
+            int processors = Runtime.getRuntime().availableProcessors();
+            configure(processors, 2 * processors);
+        }
+        return executor;
+    }
+
+    /**
+     * Interfaccia Tick per le azioni eseguite periodicamente dal thread che
+     * attende un'elaborazione.
+     */
+    interface Tick {
+        /**
+         * Esegue l'azione.
+         * @throws Exception eccezione sollevata dall'azione
+         */
+        void run() throws Exception;
+    }
+
+    /**
+     * Esegue job su un thread del pool e ne attende il risultato.
+     * Se il thread chiamante viene interrotto, l'elaborazione viene annullata
+     * interrompendo il thread che la esegue; l'algoritmo k-means se ne accorge
+     * al termine dell'iterazione in corso e libera il thread con
+     * CancellationException.
+     * @param <T> tipo del risultato
+     * @param job elaborazione
+     * @return risultato di job
+     * @throws RejectedExecutionException se tutti i thread sono occupati e la coda è piena
+     * @throws Exception eccezione sollevata da job
+     */
+    static <T> T call(Callable<T> job) throws Exception {
+        return call(job, 0, null);
+    }
+
+    /**
+     * Esegue job su un thread del pool e ne attende il risultato, eseguendo
+     * tick ogni intervalMillis millisecondi durante l'attesa, e un'ultima volta
+     * al termine di job, sul thread chiamante.
+     * Se il thread chiamante viene interrotto o tick solleva un'eccezione,
+     * l'elaborazione viene annullata come in call(Callable).
+     * @param <T> tipo del risultato
+     * @param job elaborazione
+     * @param intervalMillis intervallo tra due esecuzioni di tick, in millisecondi
+     * @param tick azione periodica, oppure null
+     * @return risultato di job
+     * @throws RejectedExecutionException se tutti i thread sono occupati e la coda è piena
+     * @throws Exception eccezione sollevata da job o da tick
+     */
+    static <T> T call(Callable<T> job, long intervalMillis, Tick tick) throws Exception {
+        Future<T> future = get().submit(job);
+        try {
+            if (tick == null)
+                return future.get();
+            while (true) {
+                try {
+                    T result = future.get(intervalMillis, TimeUnit.MILLISECONDS);
+                    tick.run();
+                    return result;
+                } catch (TimeoutException e) {
+                    tick.run();
+                }
+            }
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception)
+                throw (Exception) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw e;
+        } catch (Exception e) {
+            future.cancel(true);
+            throw e;
+        }
+    }
+}
@@ -30,14 +30,14 @@ public class ContinuousAttribute extends Attribute {
 	 * Metodi get Max.
 	 * @return estremo superiore dell'intervallo di valori che l'atributo può assumere
 	 */
-	private double getMax() {
+	double getMax() {
 		return this.max;
 	}
 	/**
 	 * Metodo get Min.
 	 * @return estremo inferiore dell'intervallo di valori che l'atributo può assumere
 	 */
-	private double getMin() {
+	double getMin() {
 		return this.min;
 	}
 	/**
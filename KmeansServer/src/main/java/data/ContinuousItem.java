@@ -17,11 +17,12 @@ public class ContinuousItem extends Item {
     /**
      * Determina la distanza in valore assouluto tra il valore scalato memorizzato.
      * nell'Item corrente.
-     * E quello scalato associato al parametro a.
-     * @param a valore dell'attributo
+     * E quello scalato associato all'item a.
+     * @param a item continuo
      */
-    double distance(Object a) {
+    double distance(Item a) {
         ContinuousAttribute attribute = (ContinuousAttribute) this.getAttribute();
-        return Math.abs(attribute.getScaledValue((double) this.getValue()) - attribute.getScaledValue((double) a));
+        return Math.abs(attribute.getScaledValue((double) this.getValue())
+                - attribute.getScaledValue((double) a.getValue()));
     }
 }
@@ -6,22 +6,41 @@ import java.util.*;
 
 /**
  * Classe Data che si occupa di gestire i dati di addestramento.
- * I dati sono memorizzati in una matrice di oggetti, dove ogni riga modella una
- * transazione.
+ * I dati sono memorizzati per colonne: un array di double per ciascun attributo
+ * continuo e un array di codici interi per ciascun attributo discreto.
+ * La riga i di ogni colonna modella la i-esima transazione.
  */
 public class Data implements Serializable {
 	/**
-	 *  Matrice di oggetti dove ogni riga modella una transazione.
-	 */
-	private final List<Example> data;
-	/**
-	 * cardianlità dell'insieme di transazioni (numero di righe della matrice).
+	 * Cardinalità dell'insieme di transazioni (numero di righe della matrice).
 	 */
 	private final int numberOfExamples;
 	/**
 	 * Vettore degli attributi in ciascuna tupla.
 	 */
 	private final List<Attribute> attributeSet;
+	/**
+	 * Colonne dei valori continui, una per ciascun ContinuousAttribute.
+	 * In posizione i si trova la colonna dell'attributo di indice i, null se
+	 * l'attributo è discreto.
+	 */
+	private final double[][] continuousColumns;
+	/**
+	 * Colonne dei codici dei valori discreti, una per ciascun DiscreteAttribute.
+	 * Ogni codice è la posizione del valore nel dominio ordinato dell'attributo.
+	 * In posizione i si trova la colonna dell'attributo di indice i, null se
+	 * l'attributo è continuo.
+	 */
+	private final int[][] discreteColumns;
+	/**
+	 * Colonna chiave o temporale usata dall'ultimo aggiornamento incrementale,
+	 * null se il dataset non è mai stato aggiornato per chiave.
+	 */
+	private final String watermarkColumn;
+	/**
+	 * Valore massimo di watermarkColumn tra le transazioni già lette.
+	 */
+	private final Object watermark;
 
 	/**
 	 * Costruttore della classe Data.
@@ -39,41 +58,142 @@ public class Data implements Serializable {
 	 */
 	public Data(String server, String database, String table, String userId, String password)
 			throws SQLException, NoValueException, EmptySetException {
+		watermarkColumn = null;
+		watermark = null;
 		DbAccess db = new DbAccess(server, database, userId, password);
 		try {
 			db.initConnection();
 		} catch (DatabaseConnectionException e) {
-			System.out.println("Errore di connessione al database");
-			e.printStackTrace();
+			throw new SQLException(e.getMessage(), e);
 		}
 
-		TableSchema tableSchema = new TableSchema(db, table);
-		TableData tableData = new TableData(db);
-		
-		data = tableData.getDistinctTransazioni(table);
-
-		numberOfExamples = tableData.getDistinctTransazioni(table).size();
+		TableSchema tableSchema;
+		TableColumns columns;
+		try {
+			tableSchema = new TableSchema(db, table);
+			columns = new TableData(db).getDistinctColumns(table, tableSchema);
+		} finally {
+			db.closeConnection();
+		}
+		numberOfExamples = columns.getNumberOfRows();
 
-		attributeSet = new LinkedList<Attribute>();
+		attributeSet = new ArrayList<Attribute>();
+		continuousColumns = new double[tableSchema.getNumberOfAttributes()][];
+		discreteColumns = new int[tableSchema.getNumberOfAttributes()][];
 
 		for (int i = 0; i < tableSchema.getNumberOfAttributes(); i++) {
 			TableSchema.Column column = tableSchema.getColumn(i);
 			String columnName = column.getColumnName();
 			if (column.isNumber()) {
-				ContinuousAttribute continuousAttribute = new ContinuousAttribute(columnName, i,
-						(double) tableData.getAggregateColumnValue(table, column, QUERY_TYPE.MIN),
-						(double) tableData.getAggregateColumnValue(table, column, QUERY_TYPE.MAX));
-				attributeSet.add(continuousAttribute);
+				attributeSet.add(new ContinuousAttribute(columnName, i, columns.getMin(i), columns.getMax(i)));
+				continuousColumns[i] = columns.getNumberColumn(i);
 			} else {
-				String[] distinctValues =new String[tableData.getDistinctColumnValues(table, column).size()];
-				tableData.getDistinctColumnValues(table,column).toArray(distinctValues);
-
-				DiscreteAttribute discreteAttribute = new DiscreteAttribute(columnName, i, distinctValues);
-				attributeSet.add(discreteAttribute);
+				// il dizionario è già ordinato, per cui i codici coincidono con quelli dell'attributo
+				attributeSet.add(new DiscreteAttribute(columnName, i, columns.getDictionary(i)));
+				discreteColumns[i] = columns.getCodeColumn(i);
 			}
 		}
-
-		db.closeConnection();
+	}
+	/**
+	 * Costruttore della classe Data a partire da colonne già calcolate.
+	 * @param attributeSet attributi, nell'ordine delle colonne
+	 * @param continuousColumns colonne continue, null per gli attributi discreti
+	 * @param discreteColumns colonne dei codici, null per gli attributi continui
+	 * @param numberOfExamples numero di transazioni
+	 * @param watermarkColumn colonna chiave dell'ultimo aggiornamento, oppure null
+	 * @param watermark valore massimo letto di watermarkColumn, oppure null
+	 */
+	Data(List<Attribute> attributeSet, double[][] continuousColumns, int[][] discreteColumns, int numberOfExamples,
+			String watermarkColumn, Object watermark) {
+		this.attributeSet = attributeSet;
+		this.continuousColumns = continuousColumns;
+		this.discreteColumns = discreteColumns;
+		this.numberOfExamples = numberOfExamples;
+		this.watermarkColumn = watermarkColumn;
+		this.watermark = watermark;
+	}
+	/**
+	 * Crea un dataset senza transazioni con gli attributi degli item di tuple,
+	 * ad esempio per ricostruire lo schema di un centroide.
+	 * @param tuple tupla con un item per attributo, nell'ordine delle colonne
+	 * @return dataset senza transazioni
+	 */
+	public static Data schemaOf(Tuple tuple) {
+		int m = tuple.getLength();
+		List<Attribute> attributes = new ArrayList<Attribute>(m);
+		double[][] continuous = new double[m][];
+		int[][] discrete = new int[m][];
+		for (int i = 0; i < m; i++) {
+			Attribute attribute = tuple.get(i).getAttribute();
+			attributes.add(attribute);
+			if (attribute instanceof ContinuousAttribute)
+				continuous[i] = new double[0];
+			else
+				discrete[i] = new int[0];
+		}
+		return new Data(attributes, continuous, discrete, 0, null, null);
+	}
+	/**
+	 * Crea un dataset con gli attributi di questo dataset e le transazioni rows,
+	 * ad esempio per assegnare nuove transazioni ai cluster di un modello.
+	 * Gli estremi degli attributi continui restano quelli di questo dataset.
+	 * Un valore discreto che non appartiene al dominio dell'attributo riceve il
+	 * codice -1, diverso da quello di qualsiasi centroide; il dataset ottenuto
+	 * va quindi usato solo per calcolare distanze.
+	 * @param rows transazioni, con un valore per attributo nell'ordine delle colonne:
+	 * un numero per gli attributi continui, una stringa per quelli discreti
+	 * @return dataset con le transazioni rows
+	 * @throws IllegalArgumentException se una transazione non ha un valore per
+	 * ciascun attributo o un valore continuo non è un numero
+	 */
+	public Data encode(Object[][] rows) {
+		int m = attributeSet.size();
+		int n = rows.length;
+		double[][] continuous = new double[m][];
+		int[][] discrete = new int[m][];
+		for (int j = 0; j < m; j++) {
+			if (continuousColumns[j] != null)
+				continuous[j] = new double[n];
+			else
+				discrete[j] = new int[n];
+		}
+		for (int i = 0; i < n; i++) {
+			Object[] row = rows[i];
+			if (row == null || row.length != m)
+				throw new IllegalArgumentException("La transazione " + i + " deve avere " + m + " valori");
+			for (int j = 0; j < m; j++) {
+				Object value = row[j];
+				if (continuous[j] != null) {
+					if (value instanceof Number) {
+						continuous[j][i] = ((Number) value).doubleValue();
+					} else {
+						try {
+							continuous[j][i] = Double.parseDouble(String.valueOf(value));
+						} catch (NumberFormatException e) {
+							throw new IllegalArgumentException("Valore non numerico per "
+									+ attributeSet.get(j).getName() + ": " + value);
+						}
+					}
+				} else {
+					discrete[j][i] = ((DiscreteAttribute) attributeSet.get(j)).indexOf(String.valueOf(value));
+				}
+			}
+		}
+		return new Data(attributeSet, continuous, discrete, n, null, null);
+	}
+	/**
+	 * Restituisce la colonna chiave dell'ultimo aggiornamento incrementale.
+	 * @return watermarkColumn, null se il dataset non è mai stato aggiornato per chiave
+	 */
+	String getWatermarkColumn() {
+		return watermarkColumn;
+	}
+	/**
+	 * Restituisce il valore massimo letto della colonna chiave dell'ultimo aggiornamento.
+	 * @return watermark
+	 */
+	Object getWatermark() {
+		return watermark;
 	}
 	/**
 	 * Restituisce il numero di esempi.
@@ -97,6 +217,21 @@ public class Data implements Serializable {
 	protected Attribute getAttribute(int index) {
 		return attributeSet.get(index);
 	}
+	/**
+	 * Restituisce il nome dell'attributo di indice index.
+	 * @param index indice di colonna
+	 * @return nome dell'attributo, uguale a quello della colonna della tabella
+	 */
+	public String getAttributeName(int index) {
+		return attributeSet.get(index).getName();
+	}
+	/**
+	 * Restituisce gli attributi, nell'ordine delle colonne.
+	 * @return lista degli attributi, da non modificare
+	 */
+	List<Attribute> getAttributeSet() {
+		return attributeSet;
+	}
 	/**
 	 * Restituisce il valore di data in posizione exampleIndex, attributeIndex.
 	 * @param exampleIndex   indice di riga
@@ -104,7 +239,30 @@ public class Data implements Serializable {
 	 * @return valore di data in posizione exampleIndex, attributeIndex
 	 */
 	public Object getAttributeValue(int exampleIndex, int attributeIndex) {
-		return data.get(exampleIndex).get(attributeIndex);
+		if (continuousColumns[attributeIndex] != null)
+			return continuousColumns[attributeIndex][exampleIndex];
+		DiscreteAttribute attribute = (DiscreteAttribute) attributeSet.get(attributeIndex);
+		return attribute.valueOf(discreteColumns[attributeIndex][exampleIndex]);
+	}
+	/**
+	 * Restituisce la colonna dei valori dell'attributo continuo di indice
+	 * attributeIndex.
+	 * L'array è condiviso e non deve essere modificato.
+	 * @param attributeIndex indice di colonna
+	 * @return colonna dei valori, null se l'attributo è discreto
+	 */
+	public double[] getContinuousColumn(int attributeIndex) {
+		return continuousColumns[attributeIndex];
+	}
+	/**
+	 * Restituisce la colonna dei codici dell'attributo discreto di indice
+	 * attributeIndex.
+	 * L'array è condiviso e non deve essere modificato.
+	 * @param attributeIndex indice di colonna
+	 * @return colonna dei codici, null se l'attributo è continuo
+	 */
+	public int[] getDiscreteColumn(int attributeIndex) {
+		return discreteColumns[attributeIndex];
 	}
 	/**
 	 * Crea un istanza di Tuple che modelli la transazione con indice di riga index
@@ -115,16 +273,89 @@ public class Data implements Serializable {
 	 */
 	public Tuple getItemSet(int index) {
 		Tuple tuple = new Tuple(attributeSet.size());
-        for (int i = 0; i < attributeSet.size(); i++) {
-            if (attributeSet.get(i) instanceof ContinuousAttribute) {
-                tuple.add(new ContinuousItem(attributeSet.get(i), (Double)
-                        data.get(index).get(attributeSet.get(i).getIndex())), i);
-            } else if (attributeSet.get(i) instanceof DiscreteAttribute) {
-                tuple.add(new DiscreteItem((DiscreteAttribute) attributeSet.get(i), (String)
-                        data.get(index).get(attributeSet.get(i).getIndex())), i);
-            }
-        }
-        return tuple;
+		for (int i = 0; i < attributeSet.size(); i++) {
+			Attribute attribute = attributeSet.get(i);
+			if (attribute instanceof ContinuousAttribute) {
+				tuple.add(new ContinuousItem(attribute, continuousColumns[attribute.getIndex()][index]), i);
+			} else if (attribute instanceof DiscreteAttribute) {
+				DiscreteAttribute discreteAttribute = (DiscreteAttribute) attribute;
+				tuple.add(new DiscreteItem(discreteAttribute, discreteColumns[attribute.getIndex()][index]), i);
+			}
+		}
+		return tuple;
+	}
+	/**
+	 * Crea un istanza di Tuple a partire dai valori primitivi di una transazione.
+	 * Per gli attributi discreti values contiene il codice del valore.
+	 * @param values valori della transazione, indicizzati per attributo
+	 * @return riferimento a tale istanza
+	 */
+	public Tuple getItemSet(double[] values) {
+		Tuple tuple = new Tuple(attributeSet.size());
+		for (int i = 0; i < attributeSet.size(); i++) {
+			Attribute attribute = attributeSet.get(i);
+			if (attribute instanceof ContinuousAttribute) {
+				tuple.add(new ContinuousItem(attribute, values[attribute.getIndex()]), i);
+			} else if (attribute instanceof DiscreteAttribute) {
+				tuple.add(new DiscreteItem((DiscreteAttribute) attribute, (int) values[attribute.getIndex()]), i);
+			}
+		}
+		return tuple;
+	}
+	/**
+	 * Restituisce i valori primitivi della transazione con indice di riga index.
+	 * Per gli attributi discreti il valore è il codice nel dizionario dell'attributo.
+	 * @param index indice di riga
+	 * @return valori della transazione, indicizzati per attributo
+	 */
+	public double[] getValues(int index) {
+		double[] values = new double[attributeSet.size()];
+		for (int i = 0; i < values.length; i++)
+			values[i] = continuousColumns[i] != null ? continuousColumns[i][index] : discreteColumns[i][index];
+		return values;
+	}
+	/**
+	 * Restituisce l'estremo inferiore dei valori dell'attributo continuo di indice attributeIndex.
+	 * @param attributeIndex indice di colonna
+	 * @return estremo inferiore
+	 */
+	public double getMin(int attributeIndex) {
+		return ((ContinuousAttribute) attributeSet.get(attributeIndex)).getMin();
+	}
+	/**
+	 * Restituisce l'estremo superiore dei valori dell'attributo continuo di indice attributeIndex.
+	 * @param attributeIndex indice di colonna
+	 * @return estremo superiore
+	 */
+	public double getMax(int attributeIndex) {
+		return ((ContinuousAttribute) attributeSet.get(attributeIndex)).getMax();
+	}
+	/**
+	 * Restituisce il numero di valori distinti dell'attributo discreto di indice attributeIndex.
+	 * I codici della colonna dell'attributo sono compresi tra 0 e tale numero escluso.
+	 * @param attributeIndex indice di colonna
+	 * @return numero di valori distinti
+	 */
+	public int getNumberOfDistinctValues(int attributeIndex) {
+		return ((DiscreteAttribute) attributeSet.get(attributeIndex)).getNumberOfDistinctValues();
+	}
+	/**
+	 * Stima la memoria occupata dalle colonne e dai dizionari, in byte.
+	 * @return dimensione stimata
+	 */
+	long estimateSize() {
+		long size = 0;
+		for (int i = 0; i < attributeSet.size(); i++) {
+			if (continuousColumns[i] != null) {
+				size += 8L * numberOfExamples;
+			} else {
+				size += 4L * numberOfExamples;
+				DiscreteAttribute attribute = (DiscreteAttribute) attributeSet.get(i);
+				for (int code = 0; code < attribute.getNumberOfDistinctValues(); code++)
+					size += 64 + 2L * attribute.valueOf(code).length();
+			}
+		}
+		return size;
 	}
 	/**
 	 * Restituisce il numero di cluster da generare.
@@ -133,8 +364,8 @@ public class Data implements Serializable {
 	 * @throws OutOfRangeSampleSize eccezione per dimensione campione fuori range
 	 */
 	public int[] sampling(int k) throws OutOfRangeSampleSize {
-		if (k < 0 || k > data.size()) {
-			throw new OutOfRangeSampleSize("Inserire un numero di cluster compreso tra 1 e " + this.data.size() + "");
+		if (k < 0 || k > numberOfExamples) {
+			throw new OutOfRangeSampleSize("Inserire un numero di cluster compreso tra 1 e " + numberOfExamples + "");
 		}
 		int centroidIndexes[] = new int[k];
 		// choose k random different centroids in data.
@@ -165,64 +396,81 @@ public class Data implements Serializable {
 	 * @return true se le due righe di data sono uguali
 	 */
 	private boolean compare(int i, int j) {
-		for (int k = 0; k < attributeSet.size(); k++)
-		if (!(this.data.get(i).get(k).equals(data.get(j).get(k)))) {
-			return false;
+		for (int k = 0; k < attributeSet.size(); k++) {
+			if (continuousColumns[k] != null) {
+				if (Double.compare(continuousColumns[k][i], continuousColumns[k][j]) != 0)
+					return false;
+			} else if (discreteColumns[k][i] != discreteColumns[k][j]) {
+				return false;
+			}
 		}
-	return true;
+		return true;
 	}
 
 	/**
 	 * Usa lo RTTI per determinare se attribute riferisce una istanza di
 	 * ContinuousAttribute o di DiscreteAttribute.
-	 * @param idList    insieme di indici di riga
+	 * @param idList    indici di riga
 	 * @param attribute attributo
 	 * @return valore prototipo
 	 */
-	public Object computePrototype(Set<Integer> idList, Attribute attribute) {
+	public Object computePrototype(int[] idList, Attribute attribute) {
 		if (attribute instanceof ContinuousAttribute)
-			return computePrototype(idList, (ContinuousAttribute) attribute);
-		else
-			return computePrototype(idList, (DiscreteAttribute) attribute);
+			return computeMean(idList, (ContinuousAttribute) attribute);
+		DiscreteAttribute discreteAttribute = (DiscreteAttribute) attribute;
+		return discreteAttribute.valueOf(computeMode(idList, discreteAttribute));
 	}
 	/**
-	 * Determina il valore che occorre più frequentemente per attribute nel
+	 * Determina il valore prototipo dell'attributo di indice attributeIndex in forma
+	 * primitiva: la media per un attributo continuo, il codice del valore più
+	 * frequente per un attributo discreto.
+	 * @param idList         indici di riga
+	 * @param attributeIndex indice di colonna
+	 * @return valore prototipo
+	 */
+	public double computePrototypeValue(int[] idList, int attributeIndex) {
+		Attribute attribute = attributeSet.get(attributeIndex);
+		if (attribute instanceof ContinuousAttribute)
+			return computeMean(idList, (ContinuousAttribute) attribute);
+		return computeMode(idList, (DiscreteAttribute) attribute);
+	}
+	/**
+	 * Determina il codice del valore che occorre più frequentemente per attribute nel
 	 * sottoinsieme di dati individuato da idList.
-	 * @param idList    insieme di indici di riga
+	 * Le frequenze sono contate in un solo passaggio su idList, in un istogramma
+	 * indicizzato dai codici del dizionario dell'attributo.
+	 * @param idList    indici di riga
 	 * @param attribute attributo
-	 * @return valore prototipo
+	 * @return codice del valore prototipo
 	 */
-	private String computePrototype(Set<Integer> idList, DiscreteAttribute attribute) {
-        Iterator<String> it = attribute.iterator();
-        String first = it.next();
-        int max = attribute.frequency(this, idList, first);
-        int tmp;
-        String prototype = first;
-        String tmp_string;
-        while (it.hasNext()) {
-            tmp_string = it.next();
-            tmp = attribute.frequency(this, idList, tmp_string);
-            if (tmp > max) {
-                max = tmp;
-                prototype = tmp_string;
-            }
-        }
-        return prototype;
+	private int computeMode(int[] idList, DiscreteAttribute attribute) {
+		int[] column = discreteColumns[attribute.getIndex()];
+		int[] histogram = new int[attribute.getNumberOfDistinctValues()];
+		for (int i : idList)
+			histogram[column[i]]++;
+		// a parità di frequenza prevale il valore minore del dominio
+		int prototype = 0;
+		for (int code = 1; code < histogram.length; code++) {
+			if (histogram[code] > histogram[prototype])
+				prototype = code;
+		}
+		return prototype;
 	}
 
 	/**
 	 * Determina il valore prototipo come media dei valori osservati per attribute
 	 * nelle transazioni di data.
 	 * Aventi indice di riga in idList.
-	 * @param idList    insieme di indici di riga
+	 * @param idList    indici di riga
 	 * @param attribute attributo
 	 * @return valore prototipo
 	 */
-	private Double computePrototype(Set<Integer> idList, ContinuousAttribute attribute) {
+	private double computeMean(int[] idList, ContinuousAttribute attribute) {
 		double sum = 0;
-		for (Integer i : idList)
-			sum += (double) data.get(i).get(attribute.getIndex());
-		return sum / idList.size();
+		double[] column = continuousColumns[attribute.getIndex()];
+		for (int i : idList)
+			sum += column[i];
+		return sum / idList.length;
 	}
 	/**
 	 * Costruisce una stringa in cui memorizza lo schema della tabella e le
@@ -230,19 +478,18 @@ public class Data implements Serializable {
 	 * @return stringa in cui memorizza lo schema della tabella e le transazioni memorizzate in data
 	 */
 	public String toString() {
-		String s = new String();
-		s = s + "N,";
+		StringBuilder s = new StringBuilder("N,");
 		for (int i = 0; i < this.getNumberOfAttributes(); i++) {
-			s += attributeSet.get(i).toString() + ",";
+			s.append(attributeSet.get(i)).append(',');
 		}
-		s = s + "\n";
+		s.append('\n');
 		for (int i = 0; i < getNumberOfExamples(); i++) {
-			s += (i + 1) + ":";
+			s.append(i + 1).append(':');
 			for (int j = 0; j < getNumberOfAttributes(); j++) {
-				s += getAttributeValue(i, j) + ",";
+				s.append(getAttributeValue(i, j)).append(',');
 			}
-			s = s + "\n";
+			s.append('\n');
 		}
-		return s;
+		return s.toString();
 	}
 }
@@ -0,0 +1,262 @@
+package data;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import database.DatabaseConnectionException;
+import database.DbAccess;
+import database.EmptySetException;
+import database.NoValueException;
+import database.TableSchema;
+
+/**
+ * Classe DataCache che condivide tra le sessioni dei client i dataset caricati
+ * dal database, indicizzati per server, database e tabella.
+ * Le istanze di Data non vengono modificate dopo il caricamento e possono
+ * essere lette da più sessioni contemporaneamente.
+ * Le richieste concorrenti di un dataset non ancora presente attendono un
+ * unico caricamento; se questo fallisce, ciascuna richiesta in attesa riprova
+ * il caricamento con le proprie credenziali. Quando la memoria stimata dei dataset supera il budget,
+ * vengono scartati i dataset usati meno di recente.
+ * Una sessione che trova il dataset in cache deve comunque poter accedere
+ * alla tabella con le proprie credenziali.
+ */
+public final class DataCache {
+	/**
+	 * Dataset in cache, dal meno al più recentemente usato.
+	 */
+	private static final LinkedHashMap<List<String>, Entry> entries = new LinkedHashMap<List<String>, Entry>(16, 0.75f, true);
+	/**
+	 * Memoria massima dei dataset in cache, in byte.
+	 */
+	private static long budget = Runtime.getRuntime().maxMemory() / 4;
+	/**
+	 * Memoria stimata dei dataset in cache, in byte.
+	 */
+	private static long size = 0;
+	/**
+	 * Numero di richieste servite dalla cache.
+	 */
+	private static final AtomicLong hits = new AtomicLong();
+	/**
+	 * Numero di richieste che hanno caricato il dataset dal database.
+	 */
+	private static final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Dataset in cache o in caricamento.
+	 */
+	private static final class Entry {
+		/**
+		 * Caricamento del dataset.
+		 */
+		final FutureTask<Data> load;
+		/**
+		 * Memoria stimata del dataset, -1 finché il caricamento non è terminato.
+		 */
+		long bytes = -1;
+
+		/**
+		 * Costruttore di classe.
+		 * @param load caricamento del dataset
+		 */
+		Entry(FutureTask<Data> load) {
+			this.load = load;
+		}
+	}
+
+	/**
+	 * Costruttore privato: la classe ha solo metodi statici.
+	 */
+	private DataCache() {
+	}
+
+	/**
+	 * Restituisce il dataset della tabella table, caricandolo dal database se
+	 * non è in cache.
+	 * @param server   nome del server
+	 * @param database nome del database
+	 * @param table    nome della tabella
+	 * @param userId   nome utente per l'accesso al database
+	 * @param password password per l'accesso al database
+	 * @return dataset condiviso, da non modificare
+	 * @throws SQLException eccezione per errore SQL o credenziali non valide
+	 * @throws NoValueException eccezione per valore non presente
+	 * @throws EmptySetException eccezione per insieme vuoto
+	 */
+	public static Data get(String server, String database, String table, String userId, String password)
+			throws SQLException, NoValueException, EmptySetException {
+		List<String> key = Arrays.asList(server, database, table);
+		Entry entry;
+		boolean owner;
+		Data data;
+		while (true) {
+			owner = false;
+			synchronized (DataCache.class) {
+				entry = entries.get(key);
+				if (entry == null) {
+					entry = new Entry(new FutureTask<Data>(() -> new Data(server, database, table, userId, password)));
+					entries.put(key, entry);
+					owner = true;
+				}
+			}
+			if (owner)
+				entry.load.run();
+
+			try {
+				data = entry.load.get();
+				break;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new SQLException("Caricamento interrotto", e);
+			} catch (ExecutionException e) {
+				remove(key, entry);
+				// il caricamento fallito usava le credenziali di un'altra sessione: si riprova con le proprie
+				if (!owner)
+					continue;
+				Throwable cause = e.getCause();
+				if (cause instanceof SQLException)
+					throw (SQLException) cause;
+				if (cause instanceof NoValueException)
+					throw (NoValueException) cause;
+				if (cause instanceof EmptySetException)
+					throw (EmptySetException) cause;
+				throw new SQLException(cause);
+			}
+		}
+		if (owner) {
+			misses.incrementAndGet();
+			account(key, entry, data);
+		} else {
+			checkAccess(server, database, table, userId, password);
+			hits.incrementAndGet();
+		}
+		return data;
+	}
+
+	/**
+	 * Sostituisce il dataset della tabella table con data, ad esempio dopo un
+	 * aggiornamento incrementale. Le sessioni che usano il dataset precedente
+	 * continuano a usarlo.
+	 * @param server   nome del server
+	 * @param database nome del database
+	 * @param table    nome della tabella
+	 * @param data     nuovo dataset, da non modificare
+	 */
+	public static void put(String server, String database, String table, Data data) {
+		List<String> key = Arrays.asList(server, database, table);
+		Entry entry = new Entry(new FutureTask<Data>(() -> data));
+		entry.load.run();
+		synchronized (DataCache.class) {
+			Entry previous = entries.get(key);
+			if (previous != null)
+				remove(key, previous);
+			entries.put(key, entry);
+			account(key, entry, data);
+		}
+	}
+
+	/**
+	 * Verifica che le credenziali permettano di leggere lo schema della tabella.
+	 * @param server   nome del server
+	 * @param database nome del database
+	 * @param table    nome della tabella
+	 * @param userId   nome utente per l'accesso al database
+	 * @param password password per l'accesso al database
+	 * @throws SQLException se la connessione fallisce o la tabella non è accessibile
+	 */
+	private static void checkAccess(String server, String database, String table, String userId, String password)
+			throws SQLException {
+		DbAccess db = new DbAccess(server, database, userId, password);
+		try {
+			db.initConnection();
+		} catch (DatabaseConnectionException e) {
+			throw new SQLException(e.getMessage(), e);
+		}
+		try {
+			if (new TableSchema(db, table).getNumberOfAttributes() == 0)
+				throw new SQLException("Tabella " + table + " non accessibile");
+		} finally {
+			db.closeConnection();
+		}
+	}
+
+	/**
+	 * Registra la memoria di un dataset appena caricato e scarta i dataset usati
+	 * meno di recente finché la memoria stimata supera il budget; un dataset più
+	 * grande del budget non viene conservato.
+	 * @param key chiave del dataset
+	 * @param entry voce del dataset
+	 * @param data dataset caricato
+	 */
+	private static synchronized void account(List<String> key, Entry entry, Data data) {
+		if (entries.get(key) != entry)
+			return;
+		entry.bytes = data.estimateSize();
+		size += entry.bytes;
+		Iterator<Map.Entry<List<String>, Entry>> it = entries.entrySet().iterator();
+		while (size > budget && it.hasNext()) {
+			Entry candidate = it.next().getValue();
+			if (candidate != entry && candidate.bytes >= 0) {
+				size -= candidate.bytes;
+				it.remove();
+			}
+		}
+		if (size > budget)
+			remove(key, entry);
+	}
+
+	/**
+	 * Rimuove dalla cache la voce entry, se è ancora associata a key.
+	 * @param key chiave del dataset
+	 * @param entry voce da rimuovere
+	 */
+	private static synchronized void remove(List<String> key, Entry entry) {
+		if (entries.get(key) == entry) {
+			entries.remove(key);
+			if (entry.bytes > 0)
+				size -= entry.bytes;
+		}
+	}
+
+	/**
+	 * Imposta la memoria massima dei dataset in cache.
+	 * @param bytes budget in byte, non negativo; con 0 nessun dataset viene conservato
+	 */
+	public static synchronized void setBudget(long bytes) {
+		if (bytes < 0)
+			throw new IllegalArgumentException("Il budget della cache non può essere negativo");
+		budget = bytes;
+	}
+
+	/**
+	 * Restituisce il numero di richieste servite dalla cache.
+	 * @return hits
+	 */
+	public static long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Restituisce il numero di richieste che hanno caricato il dataset dal database.
+	 * @return misses
+	 */
+	public static long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Restituisce la memoria stimata dei dataset in cache.
+	 * @return dimensione in byte
+	 */
+	public static synchronized long getSize() {
+		return size;
+	}
+}
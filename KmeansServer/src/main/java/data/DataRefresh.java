@@ -0,0 +1,323 @@
+package data;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import database.DatabaseConnectionException;
+import database.DbAccess;
+import database.EmptySetException;
+import database.TableColumns;
+import database.TableData;
+import database.TableSchema;
+
+/**
+ * Classe DataRefresh che aggiorna un dataset con le modifiche della tabella da
+ * cui è stato caricato, senza ricaricarlo da capo.
+ * Le modifiche si individuano in due modi:
+ * per chiave, leggendo solo le transazioni il cui valore di una colonna
+ * crescente (chiave o istante di inserimento) supera il massimo già letto, per
+ * cui si riconoscono solo le transazioni aggiunte;
+ * per checksum, leggendo l'intera tabella e confrontando l'hash di ciascuna
+ * transazione con quelli del dataset, per cui si riconoscono anche le
+ * transazioni modificate o rimosse.
+ * Il dataset originale non viene modificato: il risultato è un nuovo dataset,
+ * in cui i valori estremi degli attributi continui e i dizionari degli
+ * attributi discreti sono ottenuti da quelli originali e dalle sole differenze.
+ */
+public class DataRefresh {
+	/**
+	 * Dataset da aggiornare.
+	 */
+	private final Data data;
+	/**
+	 * Accesso al database della tabella.
+	 */
+	private final DbAccess db;
+	/**
+	 * Nome della tabella.
+	 */
+	private final String table;
+	/**
+	 * Numero di transazioni aggiunte dall'ultimo aggiornamento.
+	 */
+	private int added;
+	/**
+	 * Numero di transazioni rimosse dall'ultimo aggiornamento.
+	 */
+	private int removed;
+
+	/**
+	 * Costruttore della classe DataRefresh.
+	 * @param data dataset caricato dalla tabella table
+	 * @param server   nome del server
+	 * @param database nome del database
+	 * @param table    nome della tabella
+	 * @param userId   nome utente per l'accesso al database
+	 * @param password password per l'accesso al database
+	 */
+	public DataRefresh(Data data, String server, String database, String table, String userId, String password) {
+		this.data = data;
+		this.db = new DbAccess(server, database, userId, password);
+		this.table = table;
+	}
+
+	/**
+	 * Aggiorna il dataset con le transazioni il cui valore di keyColumn supera
+	 * il massimo letto dall'aggiornamento precedente per la stessa colonna.
+	 * Al primo aggiornamento per keyColumn si leggono tutte le transazioni e si
+	 * aggiungono solo quelle non presenti nel dataset.
+	 * @param keyColumn colonna crescente, anche esterna allo schema
+	 * @return nuovo dataset
+	 * @throws SQLException eccezione per errore SQL o schema della tabella cambiato
+	 */
+	public Data byKey(String keyColumn) throws SQLException {
+		open();
+		try {
+			TableSchema schema = checkedSchema();
+			TableData tableData = new TableData(db);
+			Object upTo = tableData.getMaxValue(table, keyColumn);
+			if (upTo == null)
+				return merge(TableColumns.empty(schema), null, keyColumn, null);
+			Object after = keyColumn.equals(data.getWatermarkColumn()) ? data.getWatermark() : null;
+			TableColumns delta = tableData.getDistinctColumns(table, schema, keyColumn, after, upTo);
+			return merge(delta, null, keyColumn, upTo);
+		} finally {
+			db.closeConnection();
+		}
+	}
+
+	/**
+	 * Aggiorna il dataset confrontando l'hash di ogni transazione della tabella
+	 * con quelli delle transazioni del dataset: le transazioni della tabella
+	 * assenti dal dataset vengono aggiunte, quelle del dataset assenti dalla
+	 * tabella vengono rimosse.
+	 * @return nuovo dataset
+	 * @throws SQLException eccezione per errore SQL o schema della tabella cambiato
+	 */
+	public Data byChecksum() throws SQLException {
+		open();
+		try {
+			TableSchema schema = checkedSchema();
+			TableColumns current;
+			try {
+				current = new TableData(db).getDistinctColumns(table, schema);
+			} catch (EmptySetException e) {
+				throw new SQLException("La tabella " + table + " è vuota");
+			}
+			boolean[] matched = new boolean[data.getNumberOfExamples()];
+			return merge(current, matched, data.getWatermarkColumn(), data.getWatermark());
+		} finally {
+			db.closeConnection();
+		}
+	}
+
+	/**
+	 * Restituisce il numero di transazioni aggiunte dall'ultimo aggiornamento.
+	 * @return added
+	 */
+	public int getAdded() {
+		return added;
+	}
+
+	/**
+	 * Restituisce il numero di transazioni rimosse dall'ultimo aggiornamento.
+	 * @return removed
+	 */
+	public int getRemoved() {
+		return removed;
+	}
+
+	/**
+	 * Ottiene la connessione al database.
+	 * @throws SQLException se la connessione fallisce
+	 */
+	private void open() throws SQLException {
+		try {
+			db.initConnection();
+		} catch (DatabaseConnectionException e) {
+			throw new SQLException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Legge lo schema della tabella e verifica che coincida con gli attributi del dataset.
+	 * @return schema della tabella
+	 * @throws SQLException se lo schema è cambiato
+	 */
+	private TableSchema checkedSchema() throws SQLException {
+		TableSchema schema = new TableSchema(db, table);
+		boolean same = schema.getNumberOfAttributes() == data.getNumberOfAttributes();
+		for (int j = 0; same && j < schema.getNumberOfAttributes(); j++) {
+			TableSchema.Column column = schema.getColumn(j);
+			same = column.getColumnName().equals(data.getAttribute(j).getName())
+					&& column.isNumber() == (data.getContinuousColumn(j) != null);
+		}
+		if (!same)
+			throw new SQLException("Lo schema della tabella " + table + " è cambiato: ricaricare il dataset");
+		return schema;
+	}
+
+	/**
+	 * Unisce al dataset le transazioni di delta non presenti in esso.
+	 * Se matched non è null, delta contiene l'intera tabella e le transazioni
+	 * del dataset che non compaiono in delta vengono rimosse.
+	 * @param delta transazioni lette dalla tabella
+	 * @param matched array di appoggio, lungo quanto il dataset, oppure null
+	 * @param watermarkColumn colonna chiave del nuovo dataset
+	 * @param watermark valore massimo letto della colonna chiave
+	 * @return nuovo dataset
+	 */
+	private Data merge(TableColumns delta, boolean[] matched, String watermarkColumn, Object watermark) {
+		int n = data.getNumberOfExamples();
+		int m = data.getNumberOfAttributes();
+		RowIndex index = new RowIndex(data);
+		int[] fresh = new int[delta.getNumberOfRows()];
+		int freshCount = 0;
+		for (int t = 0; t < delta.getNumberOfRows(); t++) {
+			int row = t;
+			int i = index.find(index.hash(delta, t), candidate -> sameRow(candidate, delta, row));
+			if (i >= 0) {
+				if (matched != null)
+					matched[i] = true;
+			} else {
+				fresh[freshCount++] = t;
+			}
+		}
+		int kept = n;
+		if (matched != null) {
+			kept = 0;
+			for (boolean keep : matched) {
+				if (keep)
+					kept++;
+			}
+		}
+		added = freshCount;
+		removed = n - kept;
+
+		int size = kept + freshCount;
+		List<Attribute> attributes = new ArrayList<Attribute>(m);
+		double[][] continuous = new double[m][];
+		int[][] discrete = new int[m][];
+		for (int j = 0; j < m; j++) {
+			Attribute attribute = data.getAttribute(j);
+			if (data.getContinuousColumn(j) != null) {
+				double[] old = data.getContinuousColumn(j);
+				double[] deltaColumn = delta.getNumberColumn(j);
+				double[] column = new double[size];
+				double min = matched == null ? data.getMin(j) : Double.POSITIVE_INFINITY;
+				double max = matched == null ? data.getMax(j) : Double.NEGATIVE_INFINITY;
+				int r = copyKept(old, matched, column);
+				if (matched != null) {
+					for (int i = 0; i < r; i++) {
+						min = Math.min(min, column[i]);
+						max = Math.max(max, column[i]);
+					}
+				}
+				for (int f = 0; f < freshCount; f++) {
+					double v = deltaColumn[fresh[f]];
+					column[r++] = v;
+					min = Math.min(min, v);
+					max = Math.max(max, v);
+				}
+				continuous[j] = column;
+				attributes.add(new ContinuousAttribute(attribute.getName(), j, min, max));
+			} else {
+				DiscreteAttribute old = (DiscreteAttribute) attribute;
+				String[] deltaDictionary = delta.getDictionary(j);
+				int[] deltaCodes = delta.getCodeColumn(j);
+				// unione ordinata dei due dizionari, con le nuove posizioni dei codici
+				int a = old.getNumberOfDistinctValues();
+				int b = deltaDictionary.length;
+				String[] union = new String[a + b];
+				int[] remapOld = new int[a];
+				int[] remapDelta = new int[b];
+				int x = 0, y = 0, u = 0;
+				while (x < a || y < b) {
+					int cmp = x == a ? 1 : y == b ? -1 : old.valueOf(x).compareTo(deltaDictionary[y]);
+					if (cmp <= 0)
+						remapOld[x] = u;
+					if (cmp >= 0)
+						remapDelta[y] = u;
+					union[u++] = cmp <= 0 ? old.valueOf(x++) : deltaDictionary[y];
+					if (cmp >= 0)
+						y++;
+				}
+				int[] column = new int[size];
+				int r = 0;
+				int[] codes = data.getDiscreteColumn(j);
+				for (int i = 0; i < n; i++) {
+					if (matched == null || matched[i])
+						column[r++] = remapOld[codes[i]];
+				}
+				for (int f = 0; f < freshCount; f++)
+					column[r++] = remapDelta[deltaCodes[fresh[f]]];
+				// i valori che non compaiono più vengono tolti dal dizionario
+				int[] used = new int[u];
+				for (int code : column)
+					used[code]++;
+				int distinct = 0;
+				for (int code = 0; code < u; code++) {
+					if (used[code] > 0)
+						used[code] = distinct++;
+					else
+						used[code] = -1;
+				}
+				String[] dictionary = new String[distinct];
+				for (int code = 0; code < u; code++) {
+					if (used[code] >= 0)
+						dictionary[used[code]] = union[code];
+				}
+				if (distinct < u) {
+					for (int i = 0; i < size; i++)
+						column[i] = used[column[i]];
+				}
+				discrete[j] = column;
+				attributes.add(new DiscreteAttribute(attribute.getName(), j, dictionary));
+			}
+		}
+		return new Data(attributes, continuous, discrete, size, watermarkColumn, watermark);
+	}
+
+	/**
+	 * Copia in column i valori di old delle transazioni conservate.
+	 * @param old colonna del dataset
+	 * @param matched transazioni conservate, null se lo sono tutte
+	 * @param column colonna di destinazione
+	 * @return numero di valori copiati
+	 */
+	private static int copyKept(double[] old, boolean[] matched, double[] column) {
+		if (matched == null) {
+			System.arraycopy(old, 0, column, 0, old.length);
+			return old.length;
+		}
+		int r = 0;
+		for (int i = 0; i < old.length; i++) {
+			if (matched[i])
+				column[r++] = old[i];
+		}
+		return r;
+	}
+
+	/**
+	 * Verifica che la transazione i del dataset coincida con la transazione t di delta.
+	 * @param i indice di riga nel dataset
+	 * @param delta transazioni lette dalla tabella
+	 * @param t indice di riga in delta
+	 * @return true se le transazioni hanno gli stessi valori
+	 */
+	private boolean sameRow(int i, TableColumns delta, int t) {
+		for (int j = 0; j < data.getNumberOfAttributes(); j++) {
+			double[] column = data.getContinuousColumn(j);
+			if (column != null) {
+				if (Double.compare(column[i], delta.getNumberColumn(j)[t]) != 0)
+					return false;
+			} else {
+				String value = ((DiscreteAttribute) data.getAttribute(j)).valueOf(data.getDiscreteColumn(j)[i]);
+				if (!value.equals(delta.getDictionary(j)[delta.getCodeColumn(j)[t]]))
+					return false;
+			}
+		}
+		return true;
+	}
+}
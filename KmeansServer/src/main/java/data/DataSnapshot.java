@@ -0,0 +1,246 @@
+package data;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Classe DataSnapshot che salva un dataset in un file binario per colonne e lo
+ * ricarica senza accedere al database.
+ * Il file contiene, nell'ordine: il numero magico MAGIC, la versione del
+ * formato, la lunghezza dell'intestazione; l'intestazione, con il numero di
+ * transazioni e lo schema (nome, tipo, estremi degli attributi continui e
+ * dizionario degli attributi discreti); le colonne, ciascuna allineata a 8
+ * byte, come double o come codici int in ordine little-endian.
+ * Il caricamento mappa in memoria ciascuna colonna con FileChannel.map e la
+ * copia in blocco nell'array usato dall'algoritmo.
+ */
+public final class DataSnapshot {
+	/**
+	 * Numero magico all'inizio del file: "KMDS".
+	 */
+	private static final int MAGIC = 0x4B4D4453;
+	/**
+	 * Versione del formato.
+	 */
+	private static final int VERSION = 1;
+	/**
+	 * Tipo di un attributo continuo nello schema.
+	 */
+	private static final byte CONTINUOUS = 0;
+	/**
+	 * Tipo di un attributo discreto nello schema.
+	 */
+	private static final byte DISCRETE = 1;
+	/**
+	 * Dimensione del buffer di scrittura delle colonne.
+	 */
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	/**
+	 * Costruttore privato: la classe ha solo metodi statici.
+	 */
+	private DataSnapshot() {
+	}
+
+	/**
+	 * Salva data nel file fileName.
+	 * @param data dataset
+	 * @param fileName nome del file
+	 * @throws IOException eccezione per errore di I/O
+	 */
+	public static void save(Data data, String fileName) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream header = new DataOutputStream(bytes);
+		header.writeInt(data.getNumberOfExamples());
+		writeSchema(header, data);
+		header.flush();
+
+		Path path = Paths.get(fileName);
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.putInt(MAGIC).putInt(VERSION).putInt(bytes.size());
+			buffer.flip();
+			writeFully(channel, buffer);
+			writeFully(channel, ByteBuffer.wrap(bytes.toByteArray()));
+			long position = align(12 + bytes.size());
+			int n = data.getNumberOfExamples();
+			for (int j = 0; j < data.getNumberOfAttributes(); j++) {
+				double[] continuous = data.getContinuousColumn(j);
+				int[] discrete = data.getDiscreteColumn(j);
+				channel.position(position);
+				for (int off = 0; off < n;) {
+					buffer.clear();
+					int len;
+					if (continuous != null) {
+						len = Math.min(n - off, BUFFER_SIZE / 8);
+						buffer.asDoubleBuffer().put(continuous, off, len);
+						buffer.limit(len * 8);
+					} else {
+						len = Math.min(n - off, BUFFER_SIZE / 4);
+						buffer.asIntBuffer().put(discrete, off, len);
+						buffer.limit(len * 4);
+					}
+					writeFully(channel, buffer);
+					off += len;
+				}
+				position = align(position + (long) n * (continuous != null ? 8 : 4));
+			}
+		}
+	}
+
+	/**
+	 * Carica il dataset salvato nel file fileName.
+	 * @param fileName nome del file
+	 * @return dataset
+	 * @throws IOException eccezione per errore di I/O o file non valido
+	 */
+	public static Data load(String fileName) throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+			long fileSize = channel.size();
+			if (fileSize < 12)
+				throw new IOException("Snapshot non valido: " + fileName);
+			MappedByteBuffer prefix = channel.map(FileChannel.MapMode.READ_ONLY, 0, 12);
+			prefix.order(ByteOrder.LITTLE_ENDIAN);
+			if (prefix.getInt() != MAGIC)
+				throw new IOException("Snapshot non valido: " + fileName);
+			int version = prefix.getInt();
+			if (version != VERSION)
+				throw new IOException("Versione dello snapshot non supportata: " + version);
+			int headerLength = prefix.getInt();
+			if (headerLength < 0 || 12L + headerLength > fileSize)
+				throw new IOException("Snapshot non valido: " + fileName);
+			byte[] header = new byte[headerLength];
+			channel.map(FileChannel.MapMode.READ_ONLY, 12, headerLength).get(header);
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(header));
+			int n = in.readInt();
+			if (n < 0)
+				throw new IOException("Snapshot non valido: " + fileName);
+			Data schema = readSchema(in);
+
+			int m = schema.getNumberOfAttributes();
+			double[][] continuous = new double[m][];
+			int[][] discrete = new int[m][];
+			long position = align(12 + headerLength);
+			for (int j = 0; j < m; j++) {
+				boolean isContinuous = schema.getContinuousColumn(j) != null;
+				long size = (long) n * (isContinuous ? 8 : 4);
+				if (position + size > fileSize)
+					throw new IOException("Snapshot troncato: " + fileName);
+				ByteBuffer column = channel.map(FileChannel.MapMode.READ_ONLY, position, size).order(ByteOrder.LITTLE_ENDIAN);
+				if (isContinuous) {
+					continuous[j] = new double[n];
+					column.asDoubleBuffer().get(continuous[j]);
+				} else {
+					discrete[j] = new int[n];
+					column.asIntBuffer().get(discrete[j]);
+					int distinct = schema.getNumberOfDistinctValues(j);
+					for (int code : discrete[j]) {
+						if (code < 0 || code >= distinct)
+							throw new IOException("Snapshot non valido: codice fuori dal dizionario");
+					}
+				}
+				position = align(position + size);
+			}
+			return new Data(schema.getAttributeSet(), continuous, discrete, n, null, null);
+		}
+	}
+
+	/**
+	 * Scrive lo schema di data: numero di attributi e, per ciascuno, tipo, nome,
+	 * estremi se continuo o dizionario se discreto.
+	 * @param out flusso di destinazione
+	 * @param data dataset
+	 * @throws IOException eccezione per errore di I/O
+	 */
+	public static void writeSchema(DataOutput out, Data data) throws IOException {
+		out.writeInt(data.getNumberOfAttributes());
+		for (int j = 0; j < data.getNumberOfAttributes(); j++) {
+			Attribute attribute = data.getAttribute(j);
+			if (attribute instanceof ContinuousAttribute) {
+				out.writeByte(CONTINUOUS);
+				out.writeUTF(attribute.getName());
+				out.writeDouble(data.getMin(j));
+				out.writeDouble(data.getMax(j));
+			} else {
+				DiscreteAttribute discrete = (DiscreteAttribute) attribute;
+				out.writeByte(DISCRETE);
+				out.writeUTF(attribute.getName());
+				out.writeInt(discrete.getNumberOfDistinctValues());
+				for (int code = 0; code < discrete.getNumberOfDistinctValues(); code++)
+					out.writeUTF(discrete.valueOf(code));
+			}
+		}
+	}
+
+	/**
+	 * Legge uno schema scritto da writeSchema.
+	 * @param in flusso di origine
+	 * @return dataset senza transazioni con gli attributi letti
+	 * @throws IOException eccezione per errore di I/O o schema non valido
+	 */
+	public static Data readSchema(DataInput in) throws IOException {
+		int m = in.readInt();
+		if (m < 0)
+			throw new IOException("Schema non valido");
+		List<Attribute> attributes = new ArrayList<Attribute>(m);
+		double[][] continuous = new double[m][];
+		int[][] discrete = new int[m][];
+		for (int j = 0; j < m; j++) {
+			byte type = in.readByte();
+			String name = in.readUTF();
+			if (type == CONTINUOUS) {
+				double min = in.readDouble();
+				double max = in.readDouble();
+				attributes.add(new ContinuousAttribute(name, j, min, max));
+				continuous[j] = new double[0];
+			} else if (type == DISCRETE) {
+				int count = in.readInt();
+				if (count < 0)
+					throw new IOException("Schema non valido");
+				String[] dictionary = new String[count];
+				for (int code = 0; code < count; code++)
+					dictionary[code] = in.readUTF();
+				attributes.add(new DiscreteAttribute(name, j, dictionary));
+				discrete[j] = new int[0];
+			} else {
+				throw new IOException("Tipo di attributo non valido: " + type);
+			}
+		}
+		return new Data(attributes, continuous, discrete, 0, null, null);
+	}
+
+	/**
+	 * Arrotonda position al multiplo di 8 successivo.
+	 * @param position posizione nel file
+	 * @return posizione allineata
+	 */
+	private static long align(long position) {
+		return (position + 7) & ~7L;
+	}
+
+	/**
+	 * Scrive tutto il contenuto di buffer, dalla posizione al limite.
+	 * @param channel canale di destinazione
+	 * @param buffer buffer
+	 * @throws IOException eccezione per errore di I/O
+	 */
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+	}
+}
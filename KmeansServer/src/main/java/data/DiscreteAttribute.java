@@ -1,8 +1,8 @@
 package data;
 
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Iterator;
-import java.util.Set;
 import java.util.TreeSet;
 
 /**
@@ -16,6 +16,15 @@ public class DiscreteAttribute extends Attribute implements Comparable<DiscreteA
      * Array di stringhe che rappresentano i valori discreti che l'attributo può assumere.
      */
     private final TreeSet<String> values;
+    /**
+     * Valori discreti in ordine crescente.
+     * La posizione di un valore nell'array è il codice con cui viene memorizzato in Data.
+     */
+    private final String[] dictionary;
+    /**
+     * Dizionario inverso che associa a ciascun valore discreto il proprio codice.
+     */
+    private final HashMap<String, Integer> codes;
     /**
      * Costruttore della classe DiscreteAttribute.
      * @param name nome simbolico dell'attributo
@@ -26,6 +35,10 @@ public class DiscreteAttribute extends Attribute implements Comparable<DiscreteA
         super(name, index);
         this.values = new TreeSet<>();
         this.values.addAll(Arrays.asList(values));
+        this.dictionary = this.values.toArray(new String[0]);
+        this.codes = new HashMap<>(dictionary.length * 2);
+        for (int i = 0; i < dictionary.length; i++)
+            this.codes.put(dictionary[i], i);
     }
     /**
      * Iteratore sui valori discreti dell'attributo.
@@ -41,6 +54,23 @@ public class DiscreteAttribute extends Attribute implements Comparable<DiscreteA
     protected int getNumberOfDistinctValues() {
         return values.size();
     }
+    /**
+     * Restituisce il codice del valore v, ossia la sua posizione nel dominio ordinato.
+     * @param v valore discreto
+     * @return codice del valore, -1 se v non appartiene al dominio
+     */
+    int indexOf(String v) {
+        Integer code = codes.get(v);
+        return code != null ? code : -1;
+    }
+    /**
+     * Restituisce il valore discreto associato al codice code.
+     * @param code codice del valore
+     * @return valore discreto
+     */
+    String valueOf(int code) {
+        return dictionary[code];
+    }
     /**
      * Metodo che confronta l'attributo corrente con un altro attributo discreto.
      * @param o attributo discreto
@@ -54,14 +84,16 @@ public class DiscreteAttribute extends Attribute implements Comparable<DiscreteA
      * In corrispondenza dell'attributo corrente (indice di colonna).
      * Negli esempi memorizzati in data e indicizzate (per riga) da idList.
      * @param data oggetto di tipo Data
-     * @param idList insieme di indici di riga
+     * @param idList indici di riga
      * @param v valore
      * @return count è il numero di volte che il valore v compare
      */
-    protected int frequency(Data data, Set<Integer> idList, String v) {
+    protected int frequency(Data data, int[] idList, String v) {
         int count = 0;
+        int code = indexOf(v);
+        int[] column = data.getDiscreteColumn(this.getIndex());
         for (int i : idList) {
-            if (data.getAttributeValue(i, this.getIndex()).equals(v)) {
+            if (column[i] == code) {
                 count++;
             }
         }
@@ -5,6 +5,10 @@ package data;
  * Estende la classe Item.
  */
 public class DiscreteItem extends Item {
+	/**
+	 * Codice del valore nel dizionario dell'attributo, -1 se il valore non vi appartiene.
+	 */
+	private final int code;
 	/**
 	 * Costruttore della classe DiscreteItem.
 	 * Invoca il costruttore della classe Item.
@@ -13,14 +17,29 @@ public class DiscreteItem extends Item {
 	 */
 	DiscreteItem(DiscreteAttribute attribute, String value) {
 		super(attribute, value);
+		this.code = attribute.indexOf(value);
+	}
+	/**
+	 * Costruttore della classe DiscreteItem a partire dal codice del valore.
+	 * @param attribute attributo discreto
+	 * @param code codice del valore nel dizionario dell'attributo
+	 */
+	DiscreteItem(DiscreteAttribute attribute, int code) {
+		super(attribute, attribute.valueOf(code));
+		this.code = code;
 	}
 	/**
-	 * Metodo che restituisce 0 se il valore dell'attributo è uguale ad a,
+	 * Metodo che restituisce 0 se il valore dell'attributo è uguale a quello di a,
 	 * altrimenti restituisce 1.
-	 * @param a valore discreto
-	 * @return 0 se il valore dell'attributo è uguale ad a, 1 altrimenti
+	 * Il confronto avviene sui codici del dizionario, e sulle stringhe solo per
+	 * valori esterni al dominio.
+	 * @param a item discreto
+	 * @return 0 se il valore dell'attributo è uguale a quello di a, 1 altrimenti
 	 */
-	protected double distance(Object a) {
-		return this.getValue().equals(a) ? 0 : 1;
+	protected double distance(Item a) {
+		int other = ((DiscreteItem) a).code;
+		if (code < 0 || other < 0)
+			return this.getValue().equals(a.getValue()) ? 0 : 1;
+		return code == other ? 0 : 1;
 	}
 }
@@ -1,6 +1,5 @@
 package data;
 import java.io.Serializable;
-import java.util.Set;
 
 /**
  * Classe astratta Item che modella un item.
@@ -48,17 +47,7 @@ public abstract class Item implements Serializable {
 	}
 	/**
 	 * Metodo astratto per il calcolo della distanza.
-	 * @param a: oggetto di tipo Object.
+	 * @param a: item dello stesso attributo.
 	 */
-	abstract double distance(Object a);
-	/**
-	 * Modifica il membro value.
-	 * Assegnadogli il valore restituito dal metodo.
-	 * computeProprotyper(clusteredData,attribute).
-	 * @param data: oggetto di tipo Data.
-	 * @param clusteredData: insieme di interi.
-	 */
-	public void update(Data data, Set<Integer> clusteredData) {
-		this.value = data.computePrototype(clusteredData, attribute);
-	}
+	abstract double distance(Item a);
 }
\ No newline at end of file
@@ -0,0 +1,114 @@
+package data;
+
+import java.util.HashMap;
+import java.util.function.IntPredicate;
+
+import database.TableColumns;
+
+/**
+ * Classe RowIndex che indicizza per hash le transazioni di un dataset, per
+ * ritrovare in tempo costante quelle uguali alle transazioni lette dalla tabella.
+ * Transazioni diverse possono avere lo stesso hash, ad esempio perché i valori
+ * discreti contribuiscono con String.hashCode(): per ciascun hash l'indice
+ * conserva tutte le transazioni, concatenate in next.
+ */
+final class RowIndex {
+	/**
+	 * Dataset indicizzato.
+	 */
+	private final Data data;
+	/**
+	 * Hash di ciascun valore discreto, per attributo e per codice.
+	 */
+	private final int[][] valueHash;
+	/**
+	 * Ultima transazione inserita per ciascun hash.
+	 */
+	private final HashMap<Long, Integer> head;
+	/**
+	 * Transazione precedente con lo stesso hash, -1 se non esiste.
+	 */
+	private final int[] next;
+
+	/**
+	 * Costruttore di classe.
+	 * @param data dataset da indicizzare
+	 */
+	RowIndex(Data data) {
+		this.data = data;
+		int n = data.getNumberOfExamples();
+		int m = data.getNumberOfAttributes();
+		valueHash = new int[m][];
+		for (int j = 0; j < m; j++) {
+			if (data.getDiscreteColumn(j) != null) {
+				DiscreteAttribute attribute = (DiscreteAttribute) data.getAttribute(j);
+				valueHash[j] = new int[attribute.getNumberOfDistinctValues()];
+				for (int code = 0; code < valueHash[j].length; code++)
+					valueHash[j][code] = attribute.valueOf(code).hashCode();
+			}
+		}
+		head = new HashMap<Long, Integer>(n * 2);
+		next = new int[n];
+		for (int i = 0; i < n; i++) {
+			Integer previous = head.put(hash(i), i);
+			next[i] = previous != null ? previous : -1;
+		}
+	}
+
+	/**
+	 * Restituisce l'hash della transazione i del dataset.
+	 * @param i indice di riga nel dataset
+	 * @return hash della transazione
+	 */
+	long hash(int i) {
+		long h = 0;
+		for (int j = 0; j < valueHash.length; j++) {
+			double[] column = data.getContinuousColumn(j);
+			h = mix(h, column != null ? Double.doubleToLongBits(column[i]) : valueHash[j][data.getDiscreteColumn(j)[i]]);
+		}
+		return h;
+	}
+
+	/**
+	 * Restituisce l'hash della transazione t di delta, uguale a quello delle
+	 * transazioni del dataset con gli stessi valori.
+	 * @param delta transazioni lette dalla tabella, con gli attributi del dataset
+	 * @param t indice di riga in delta
+	 * @return hash della transazione
+	 */
+	long hash(TableColumns delta, int t) {
+		long h = 0;
+		for (int j = 0; j < valueHash.length; j++) {
+			double[] column = delta.getNumberColumn(j);
+			h = mix(h, column != null ? Double.doubleToLongBits(column[t])
+					: delta.getDictionary(j)[delta.getCodeColumn(j)[t]].hashCode());
+		}
+		return h;
+	}
+
+	/**
+	 * Restituisce una transazione del dataset con hash h che soddisfa same.
+	 * @param h hash della transazione cercata
+	 * @param same verifica che una transazione candidata sia quella cercata
+	 * @return indice di riga nel dataset, -1 se nessuna candidata soddisfa same
+	 */
+	int find(long h, IntPredicate same) {
+		Integer first = head.get(h);
+		for (int i = first != null ? first : -1; i >= 0; i = next[i]) {
+			if (same.test(i))
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Combina l'hash parziale di una transazione con il valore di un attributo.
+	 * @param h hash parziale
+	 * @param v valore dell'attributo
+	 * @return nuovo hash parziale
+	 */
+	private static long mix(long h, long v) {
+		long z = (h ^ v) * 0x9e3779b97f4a7c15L;
+		return z ^ (z >>> 29);
+	}
+}
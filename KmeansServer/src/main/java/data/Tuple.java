@@ -1,7 +1,6 @@
 package data;
 
 import java.io.Serializable;
-import java.util.Set;
 /**
  * Classe Tuple che modella una tupla.
  * Una tupla è un array di Item.
@@ -50,23 +49,23 @@ public class Tuple implements Serializable {
     public double getDistance(Tuple obj) {
         double distance = 0;
         for (int i = 0; i < this.getLength(); i++)
-            distance += this.get(i).distance(obj.get(i).getValue());
+            distance += this.get(i).distance(obj.get(i));
         return distance;
     }
     /**
      * Restituisce la media delle distanze tra la tupla corrente e i dati del
      * cluster.
      * @param data è un oggetto Data
-     * @param clusteredData è un insieme di interi
+     * @param clusteredData indici di riga delle transazioni del cluster
      * @return p
      */
-    public double avgDistance(Data data, Set<Integer> clusteredData) {
+    public double avgDistance(Data data, int[] clusteredData) {
         double p = 0.0, sumD = 0.0;
         for (int i : clusteredData) {
             double d = getDistance(data.getItemSet(i));
             sumD += d;
         }
-        p = sumD / clusteredData.size();
+        p = sumD / clusteredData.length;
         return p;
     }
 }
@@ -0,0 +1,197 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Classe AssignmentWriter che scrive in una tabella l'assegnamento di
+ * transazioni ai cluster: per ogni transazione le colonne chiave, l'indice del
+ * cluster e la distanza dal suo centroide.
+ * La tabella viene creata se non esiste e le righe vengono aggiunte a quelle
+ * presenti. Le righe sono inviate con un PreparedStatement a gruppi di
+ * batchSize e confermate ogni commitInterval righe e da commit, che il chiamante
+ * invoca dopo l'ultima riga; in caso di errore, o se close viene chiamato senza
+ * commit, si perdono solo le righe non ancora confermate.
+ */
+public class AssignmentWriter implements AutoCloseable {
+	/**
+	 * Connessione su cui vengono scritte le righe.
+	 */
+	private final Connection connection;
+	/**
+	 * Modalità di conferma automatica della connessione prima della scrittura.
+	 */
+	private final boolean autoCommit;
+	/**
+	 * Istruzione di inserimento di una riga.
+	 */
+	private final PreparedStatement insert;
+	/**
+	 * Numero di colonne chiave.
+	 */
+	private final int keys;
+	/**
+	 * Numero di righe inviate insieme al database.
+	 */
+	private final int batchSize;
+	/**
+	 * Numero di righe dopo cui la scrittura viene confermata.
+	 */
+	private final int commitInterval;
+	/**
+	 * Righe accodate e non ancora inviate.
+	 */
+	private int pending = 0;
+	/**
+	 * Righe inviate e non ancora confermate.
+	 */
+	private int uncommitted = 0;
+	/**
+	 * Righe scritte.
+	 */
+	private int written = 0;
+	/**
+	 * Vale true se la scrittura è stata completata con commit.
+	 */
+	private boolean committed = false;
+
+	/**
+	 * Costruttore di classe.
+	 * Crea la tabella table, se non esiste, con le colonne chiave keyColumns e le
+	 * colonne cluster e distance.
+	 * @param db accesso al database, con la connessione già inizializzata
+	 * @param table nome della tabella di destinazione
+	 * @param keyColumns nomi delle colonne chiave
+	 * @param keyTypes tipi SQL delle colonne chiave
+	 * @param batchSize numero di righe inviate insieme, almeno 1
+	 * @param commitInterval numero di righe dopo cui confermare la scrittura, almeno 1
+	 * @throws SQLException eccezione per errore SQL o nome non valido
+	 */
+	public AssignmentWriter(DbAccess db, String table, String[] keyColumns, String[] keyTypes, int batchSize,
+			int commitInterval) throws SQLException {
+		this.connection = db.getConnection();
+		this.keys = keyColumns.length;
+		this.batchSize = batchSize;
+		this.commitInterval = commitInterval;
+		StringBuilder create = new StringBuilder("CREATE TABLE IF NOT EXISTS ").append(TableData.quote(table)).append(" (");
+		StringBuilder insert = new StringBuilder("INSERT INTO ").append(TableData.quote(table)).append(" (");
+		for (int j = 0; j < keys; j++) {
+			create.append(TableData.quote(keyColumns[j])).append(' ').append(keyTypes[j]).append(", ");
+			insert.append(TableData.quote(keyColumns[j])).append(", ");
+		}
+		create.append("`cluster` INT NOT NULL, `distance` DOUBLE NOT NULL);");
+		insert.append("`cluster`, `distance`) VALUES (");
+		for (int j = 0; j < keys + 2; j++)
+			insert.append(j > 0 ? ", ?" : "?");
+		insert.append(");");
+
+		Statement st = connection.createStatement();
+		try {
+			st.executeUpdate(create.toString());
+		} finally {
+			st.close();
+		}
+		this.autoCommit = connection.getAutoCommit();
+		connection.setAutoCommit(false);
+		try {
+			this.insert = connection.prepareStatement(insert.toString());
+		} catch (SQLException e) {
+			connection.setAutoCommit(autoCommit);
+			throw e;
+		}
+	}
+
+	/**
+	 * Imposta il valore numerico della colonna chiave j della riga corrente.
+	 * @param j indice della colonna chiave
+	 * @param value valore
+	 * @throws SQLException eccezione per errore SQL
+	 */
+	public void setKey(int j, double value) throws SQLException {
+		insert.setDouble(j + 1, value);
+	}
+
+	/**
+	 * Imposta il valore della colonna chiave j della riga corrente.
+	 * @param j indice della colonna chiave
+	 * @param value valore
+	 * @throws SQLException eccezione per errore SQL
+	 */
+	public void setKey(int j, Object value) throws SQLException {
+		insert.setObject(j + 1, value);
+	}
+
+	/**
+	 * Completa la riga corrente con cluster e distanza e la accoda; invia le
+	 * righe accodate quando sono batchSize.
+	 * @param cluster indice del cluster
+	 * @param distance distanza dal centroide del cluster
+	 * @throws SQLException eccezione per errore SQL
+	 */
+	public void add(int cluster, double distance) throws SQLException {
+		insert.setInt(keys + 1, cluster);
+		insert.setDouble(keys + 2, distance);
+		insert.addBatch();
+		written++;
+		if (++pending == batchSize)
+			flush();
+	}
+
+	/**
+	 * Invia le righe accodate e conferma la scrittura se le righe non confermate
+	 * sono almeno commitInterval.
+	 * @throws SQLException eccezione per errore SQL
+	 */
+	private void flush() throws SQLException {
+		if (pending > 0) {
+			insert.executeBatch();
+			uncommitted += pending;
+			pending = 0;
+		}
+		if (uncommitted >= commitInterval) {
+			connection.commit();
+			uncommitted = 0;
+		}
+	}
+
+	/**
+	 * Restituisce il numero di righe scritte.
+	 * @return written
+	 */
+	public int getRowsWritten() {
+		return written;
+	}
+
+	/**
+	 * Invia e conferma le righe rimanenti. Va invocato dopo l'ultima riga: se
+	 * close viene chiamato senza commit, le righe non confermate vengono annullate.
+	 * @throws SQLException eccezione per errore SQL
+	 */
+	public void commit() throws SQLException {
+		flush();
+		connection.commit();
+		uncommitted = 0;
+		committed = true;
+	}
+
+	/**
+	 * Annulla le righe non confermate se la scrittura non è stata completata
+	 * con commit e ripristina la modalità di conferma della connessione.
+	 * @throws SQLException eccezione per errore SQL
+	 */
+	@Override
+	public void close() throws SQLException {
+		try {
+			if (!committed)
+				connection.rollback();
+		} finally {
+			try {
+				insert.close();
+			} finally {
+				connection.setAutoCommit(autoCommit);
+			}
+		}
+	}
+}
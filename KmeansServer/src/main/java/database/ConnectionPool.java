@@ -0,0 +1,255 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Classe ConnectionPool che mantiene aperte le connessioni al database per
+ * riusarle tra richieste successive.
+ * Esiste un pool per ciascuna combinazione di server, database, utente e
+ * password; ogni pool concede al più MAX_CONNECTIONS connessioni
+ * contemporaneamente e chi ne richiede una oltre il limite attende al più
+ * MAX_WAIT_MILLIS millisecondi.
+ * Una connessione restituita resta inattiva nel pool per al più IDLE_MILLIS
+ * millisecondi, dopo i quali viene chiusa; prima di essere riusata ne viene
+ * verificata la validità.
+ */
+public class ConnectionPool {
+	/**
+	 * Nome del driver da utilizzare per la connessione al database.
+	 */
+	private static final String DRIVER_CLASS_NAME = "com.mysql.cj.jdbc.Driver";
+	/**
+	 * Numero massimo di connessioni concesse da un pool.
+	 */
+	static final int MAX_CONNECTIONS = 8;
+	/**
+	 * Attesa massima di una connessione, in millisecondi.
+	 */
+	static final long MAX_WAIT_MILLIS = 10000;
+	/**
+	 * Tempo massimo di inattività di una connessione nel pool, in millisecondi.
+	 */
+	static final long IDLE_MILLIS = 60000;
+	/**
+	 * Tempo massimo per la verifica di validità di una connessione, in secondi.
+	 */
+	private static final int VALIDATION_SECONDS = 2;
+	/**
+	 * Pool esistenti, indicizzati per parametri di connessione.
+	 */
+	private static final Map<String, ConnectionPool> pools = new HashMap<String, ConnectionPool>();
+	/**
+	 * Thread che chiude periodicamente le connessioni inattive.
+	 */
+	private static ScheduledExecutorService evictor;
+	/**
+	 * Vale true se il driver è stato caricato.
+	 */
+	private static boolean driverLoaded = false;
+
+	/**
+	 * Stringa di connessione al database.
+	 */
+	private final String connectionString;
+	/**
+	 * Permessi per le connessioni concesse.
+	 */
+	private final Semaphore permits = new Semaphore(MAX_CONNECTIONS, true);
+	/**
+	 * Connessioni inattive, la più recente in testa.
+	 */
+	private final ArrayDeque<Idle> idle = new ArrayDeque<Idle>();
+
+	/**
+	 * Connessione inattiva con l'istante in cui è stata restituita.
+	 */
+	private static class Idle {
+		/**
+		 * Connessione.
+		 */
+		final Connection connection;
+		/**
+		 * Istante della restituzione, in millisecondi.
+		 */
+		final long since;
+
+		/**
+		 * Costruttore di classe.
+		 * @param connection connessione
+		 * @param since istante della restituzione
+		 */
+		Idle(Connection connection, long since) {
+			this.connection = connection;
+			this.since = since;
+		}
+	}
+
+	/**
+	 * Costruttore di classe.
+	 * @param connectionString stringa di connessione al database
+	 */
+	private ConnectionPool(String connectionString) {
+		this.connectionString = connectionString;
+	}
+
+	/**
+	 * Restituisce il pool per i parametri di connessione indicati, creandolo se
+	 * non esiste.
+	 * @param connectionString stringa di connessione, comprensiva di utente e password
+	 * @return pool di connessioni
+	 * @throws DatabaseConnectionException se il driver non è disponibile
+	 */
+	static synchronized ConnectionPool get(String connectionString) throws DatabaseConnectionException {
+		if (!driverLoaded) {
+			try {
+				Class.forName(DRIVER_CLASS_NAME);
+			} catch (ClassNotFoundException e) {
+				throw new DatabaseConnectionException("[!] Driver non trovato: " + e.getMessage());
+			}
+			driverLoaded = true;
+		}
+		if (evictor == null) {
+			evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread t = new Thread(r, "connection-pool-evictor");
+				t.setDaemon(true);
+				return t;
+			});
+			evictor.scheduleWithFixedDelay(ConnectionPool::evictAll, IDLE_MILLIS, IDLE_MILLIS / 2, TimeUnit.MILLISECONDS);
+		}
+		ConnectionPool pool = pools.get(connectionString);
+		if (pool == null) {
+			pool = new ConnectionPool(connectionString);
+			pools.put(connectionString, pool);
+		}
+		return pool;
+	}
+
+	/**
+	 * Concede una connessione: riusa la più recente tra quelle inattive e valide,
+	 * altrimenti ne apre una nuova.
+	 * @return connessione
+	 * @throws DatabaseConnectionException se nessuna connessione si libera entro
+	 * MAX_WAIT_MILLIS o l'apertura fallisce
+	 */
+	Connection borrow() throws DatabaseConnectionException {
+		try {
+			if (!permits.tryAcquire(MAX_WAIT_MILLIS, TimeUnit.MILLISECONDS))
+				throw new DatabaseConnectionException("[!] Nessuna connessione disponibile entro " + MAX_WAIT_MILLIS + " ms");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DatabaseConnectionException("[!] Attesa della connessione interrotta");
+		}
+		try {
+			Idle candidate;
+			while ((candidate = poll()) != null) {
+				if (System.currentTimeMillis() - candidate.since <= IDLE_MILLIS && isValid(candidate.connection))
+					return candidate.connection;
+				close(candidate.connection);
+			}
+			System.out.println("Connection's String: " + connectionString);
+			return DriverManager.getConnection(connectionString);
+		} catch (SQLException e) {
+			permits.release();
+			throw new DatabaseConnectionException(
+					"[!] SQLException: " + e.getMessage() + "\n"
+							+ "[!] SQLState: " + e.getSQLState() + "\n"
+							+ "[!] VendorError: " + e.getErrorCode());
+		} catch (RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Restituisce al pool una connessione concessa da borrow.
+	 * Se la connessione è stata chiusa non viene conservata.
+	 * @param connection connessione
+	 */
+	void release(Connection connection) {
+		try {
+			if (!connection.isClosed()) {
+				synchronized (idle) {
+					idle.push(new Idle(connection, System.currentTimeMillis()));
+				}
+			}
+		} catch (SQLException e) {
+			close(connection);
+		} finally {
+			permits.release();
+		}
+	}
+
+	/**
+	 * Estrae la connessione inattiva più recente.
+	 * @return connessione inattiva, null se non ce ne sono
+	 */
+	private Idle poll() {
+		synchronized (idle) {
+			return idle.poll();
+		}
+	}
+
+	/**
+	 * Chiude le connessioni inattive da più di IDLE_MILLIS millisecondi.
+	 */
+	private void evict() {
+		long now = System.currentTimeMillis();
+		synchronized (idle) {
+			Iterator<Idle> it = idle.descendingIterator();
+			while (it.hasNext()) {
+				Idle candidate = it.next();
+				if (now - candidate.since <= IDLE_MILLIS)
+					break;
+				it.remove();
+				close(candidate.connection);
+			}
+		}
+	}
+
+	/**
+	 * Chiude le connessioni inattive di tutti i pool.
+	 */
+	private static void evictAll() {
+		ConnectionPool[] all;
+		synchronized (ConnectionPool.class) {
+			all = pools.values().toArray(new ConnectionPool[0]);
+		}
+		for (ConnectionPool pool : all)
+			pool.evict();
+	}
+
+	/**
+	 * Verifica che la connessione sia ancora utilizzabile.
+	 * @param connection connessione
+	 * @return true se la connessione è valida
+	 */
+	private static boolean isValid(Connection connection) {
+		try {
+			return connection.isValid(VALIDATION_SECONDS);
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Chiude la connessione ignorando gli errori.
+	 * @param connection connessione
+	 */
+	private static void close(Connection connection) {
+		try {
+			connection.close();
+		} catch (SQLException e) {
+			System.out.println("Errore nella chiusura della connessione");
+		}
+	}
+}
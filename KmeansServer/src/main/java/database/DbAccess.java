@@ -1,19 +1,13 @@
 package database;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.SQLException;
 
 /**
  * Classe che si occupa di gestire la connessione al database.
- * In particolare, si occupa di inizializzare la connessione al database e di
- * chiuderla.
+ * In particolare, si occupa di ottenere la connessione al database dal
+ * ConnectionPool e di restituirla.
  */
 public class DbAccess {
-  /**
-   * Costante che contiene il nome del driver da utilizzare per la connessione al database.
-   */
-  String DRIVER_CLASS_NAME = "com.mysql.cj.jdbc.Driver";
   /**
    * Costante che contiene il nome del DBMS a cui ci si vuole connettere.
    */
@@ -42,6 +36,10 @@ public class DbAccess {
    * Riferimento alla connessione al database.
    */
   Connection conn;
+  /**
+   * Pool da cui è stata ottenuta conn.
+   */
+  private ConnectionPool pool;
 
   /**
    * Costruttore della classe DbAccess.
@@ -58,29 +56,18 @@ public class DbAccess {
   }
 
   /**
-   * Impartisce al class loader l’ordine di caricare il driver mysql,
-   * inizializza la connessione riferita da conn.
+   * Ottiene dal ConnectionPool dei parametri di connessione una connessione,
+   * riferita da conn; il driver mysql viene caricato dal pool al primo uso.
    * Il metodo solleva e propaga una eccezione di tipo DatabaseConnectionException in caso
-   * di fallimento nella connessione al database
+   * di fallimento nella connessione al database o se nessuna connessione si
+   * libera entro il tempo di attesa del pool
    * @throws DatabaseConnectionException eccezione per fallimento connessione al database
    */
   public void initConnection() throws DatabaseConnectionException {
-    try {
-      Class.forName(DRIVER_CLASS_NAME);
-    } catch (ClassNotFoundException e) {
-      throw new DatabaseConnectionException("[!] Driver non trovato: " + e.getMessage());
-    }
     String connectionString = DBMS + "://" + server + ":" + PORT + "/" + database
-        + "?user=" + user_id + "&password=" + password + "&serverTimezone=UTC";
-    System.out.println("Connection's String: " + connectionString);
-    try {
-      conn = DriverManager.getConnection(connectionString);
-    } catch (SQLException e) {
-      throw new DatabaseConnectionException(
-          "[!] SQLException: " + e.getMessage() + "\n"
-              + "[!] SQLState: " + e.getSQLState() + "\n"
-              + "[!] VendorError: " + e.getErrorCode());
-    }
+        + "?user=" + user_id + "&password=" + password + "&serverTimezone=UTC&useCursorFetch=true";
+    pool = ConnectionPool.get(connectionString);
+    conn = pool.borrow();
   }
 
   /**
@@ -91,13 +78,13 @@ public class DbAccess {
     return conn;
   }
   /**
-   * Chiude la connessione al database
+   * Restituisce la connessione al pool, che la mantiene aperta per le
+   * richieste successive
    */
   public void closeConnection() {
-    try {
-      conn.close();
-    } catch (Exception e) {
-      System.out.println("Errore nella chiusura della connessione");
+    if (conn != null) {
+      pool.release(conn);
+      conn = null;
     }
   }
 }
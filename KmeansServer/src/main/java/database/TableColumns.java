@@ -0,0 +1,210 @@
+package database;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Classe TableColumns che memorizza per colonne le transazioni distinte di una
+ * tabella, lette in un solo passaggio da TableData.
+ * Per ogni colonna numerica conserva i valori, il minimo e il massimo; per ogni
+ * colonna di tipo stringa conserva il dizionario ordinato dei valori distinti e,
+ * per ogni transazione, la posizione del valore nel dizionario.
+ */
+public class TableColumns {
+	/**
+	 * Numero di transazioni lette.
+	 */
+	private int size = 0;
+	/**
+	 * Numero di transazioni che le colonne possono contenere.
+	 */
+	private int capacity;
+	/**
+	 * Valori delle colonne numeriche, null per le colonne di tipo stringa.
+	 */
+	private final double[][] numbers;
+	/**
+	 * Codici delle colonne di tipo stringa, null per le colonne numeriche.
+	 */
+	private final int[][] codes;
+	/**
+	 * Valore minimo di ciascuna colonna numerica.
+	 */
+	private final double[] min;
+	/**
+	 * Valore massimo di ciascuna colonna numerica.
+	 */
+	private final double[] max;
+	/**
+	 * Codice provvisorio di ciascun valore distinto, in ordine di lettura.
+	 */
+	private final HashMap<String, Integer>[] pending;
+	/**
+	 * Dizionari ordinati delle colonne di tipo stringa, calcolati da complete().
+	 */
+	private final String[][] dictionaries;
+
+	/**
+	 * Costruttore di classe.
+	 * @param schema schema della tabella
+	 * @param capacity numero di transazioni previsto
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	TableColumns(TableSchema schema, int capacity) {
+		int m = schema.getNumberOfAttributes();
+		this.capacity = capacity;
+		numbers = new double[m][];
+		codes = new int[m][];
+		min = new double[m];
+		max = new double[m];
+		pending = new HashMap[m];
+		dictionaries = new String[m][];
+		for (int j = 0; j < m; j++) {
+			if (schema.getColumn(j).isNumber()) {
+				numbers[j] = new double[capacity];
+				min[j] = Double.POSITIVE_INFINITY;
+				max[j] = Double.NEGATIVE_INFINITY;
+			} else {
+				codes[j] = new int[capacity];
+				pending[j] = new HashMap<String, Integer>();
+			}
+		}
+	}
+
+	/**
+	 * Crea un insieme di transazioni vuoto con le colonne di schema.
+	 * @param schema schema della tabella
+	 * @return insieme vuoto
+	 */
+	public static TableColumns empty(TableSchema schema) {
+		TableColumns columns = new TableColumns(schema, 0);
+		columns.complete();
+		return columns;
+	}
+
+	/**
+	 * Aggiunge una transazione vuota, ampliando le colonne se necessario.
+	 * @return indice di riga della transazione
+	 */
+	int addRow() {
+		if (size == capacity) {
+			capacity = Math.max(16, capacity * 2);
+			for (int j = 0; j < numbers.length; j++) {
+				if (numbers[j] != null)
+					numbers[j] = Arrays.copyOf(numbers[j], capacity);
+				else
+					codes[j] = Arrays.copyOf(codes[j], capacity);
+			}
+		}
+		return size++;
+	}
+
+	/**
+	 * Memorizza il valore numerico della colonna j nella riga row.
+	 * @param row indice di riga
+	 * @param j indice di colonna
+	 * @param value valore
+	 */
+	void setNumber(int row, int j, double value) {
+		numbers[j][row] = value;
+		if (value < min[j])
+			min[j] = value;
+		if (value > max[j])
+			max[j] = value;
+	}
+
+	/**
+	 * Memorizza il valore di tipo stringa della colonna j nella riga row.
+	 * @param row indice di riga
+	 * @param j indice di colonna
+	 * @param value valore
+	 */
+	void setString(int row, int j, String value) {
+		HashMap<String, Integer> dictionary = pending[j];
+		Integer code = dictionary.get(value);
+		if (code == null) {
+			code = dictionary.size();
+			dictionary.put(value, code);
+		}
+		codes[j][row] = code;
+	}
+
+	/**
+	 * Completa la lettura: riduce le colonne al numero di transazioni lette,
+	 * ordina i dizionari e sostituisce i codici provvisori con la posizione del
+	 * valore nel dizionario ordinato.
+	 */
+	void complete() {
+		for (int j = 0; j < numbers.length; j++) {
+			if (numbers[j] != null) {
+				numbers[j] = Arrays.copyOf(numbers[j], size);
+				continue;
+			}
+			HashMap<String, Integer> dictionary = pending[j];
+			String[] sorted = dictionary.keySet().toArray(new String[0]);
+			Arrays.sort(sorted);
+			int[] remap = new int[sorted.length];
+			for (int c = 0; c < sorted.length; c++)
+				remap[dictionary.get(sorted[c])] = c;
+			int[] column = Arrays.copyOf(codes[j], size);
+			for (int i = 0; i < size; i++)
+				column[i] = remap[column[i]];
+			codes[j] = column;
+			dictionaries[j] = sorted;
+			pending[j] = null;
+		}
+	}
+
+	/**
+	 * Restituisce il numero di transazioni lette.
+	 * @return numero di transazioni
+	 */
+	public int getNumberOfRows() {
+		return size;
+	}
+
+	/**
+	 * Restituisce i valori della colonna numerica j.
+	 * @param j indice di colonna
+	 * @return valori, null se la colonna è di tipo stringa
+	 */
+	public double[] getNumberColumn(int j) {
+		return numbers[j];
+	}
+
+	/**
+	 * Restituisce i codici della colonna di tipo stringa j.
+	 * @param j indice di colonna
+	 * @return posizioni dei valori nel dizionario, null se la colonna è numerica
+	 */
+	public int[] getCodeColumn(int j) {
+		return codes[j];
+	}
+
+	/**
+	 * Restituisce il dizionario ordinato della colonna di tipo stringa j.
+	 * @param j indice di colonna
+	 * @return valori distinti in ordine crescente, null se la colonna è numerica
+	 */
+	public String[] getDictionary(int j) {
+		return dictionaries[j];
+	}
+
+	/**
+	 * Restituisce il valore minimo della colonna numerica j.
+	 * @param j indice di colonna
+	 * @return valore minimo
+	 */
+	public double getMin(int j) {
+		return min[j];
+	}
+
+	/**
+	 * Restituisce il valore massimo della colonna numerica j.
+	 * @param j indice di colonna
+	 * @return valore massimo
+	 */
+	public double getMax(int j) {
+		return max[j];
+	}
+}
@@ -1,10 +1,12 @@
 package database;
 
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -20,6 +22,10 @@ public class TableData {
 	 * Oggetto che rappresenta la connessione al database.
 	 */
 	DbAccess db;
+	/**
+	 * Numero di righe richieste al server a ogni accesso del cursore.
+	 */
+	static final int FETCH_SIZE = 1000;
 	/**
 	 * Costruttore di classe.
 	 * Inizializza l'oggetto db.
@@ -50,7 +56,7 @@ public class TableData {
 		if (!rs.next())
 			throw new EmptySetException("Il resultset e' vuoto");
 		List<Example> transazioni = new ArrayList<Example>();
-		while (rs.next()) {
+		do {
 			Example e = new Example();
 			for (int i = 0; i < tableSchema.getNumberOfAttributes(); i++) {
 				if (tableSchema.getColumn(i).isNumber())
@@ -59,11 +65,231 @@ public class TableData {
 					e.add(rs.getString(i+1));
 			}
 			transazioni.add(e);
-		}
+		} while (rs.next());
 		st.close();
 		rs.close();
 		return transazioni;
 	}
+	/**
+	 * Estrae le transazioni distinte della tabella table in un solo passaggio e
+	 * le memorizza per colonne.
+	 * Il resultset è letto con un cursore in avanti, FETCH_SIZE righe alla
+	 * volta; durante la lettura si calcolano minimo e massimo delle colonne
+	 * numeriche e i dizionari delle colonne di tipo stringa.
+	 * @param table nome della tabella.
+	 * @param tableSchema schema della tabella.
+	 * @return transazioni distinte memorizzate per colonne.
+	 * @throws SQLException eccezione per errore SQL
+	 * @throws EmptySetException eccezione per insieme vuoto
+	 */
+	public TableColumns getDistinctColumns(String table, TableSchema tableSchema) throws SQLException, EmptySetException {
+		TableColumns columns;
+		Statement st = db.getConnection().createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+		try {
+			st.setFetchSize(FETCH_SIZE);
+			columns = readColumns(st.executeQuery(selectDistinct(table, tableSchema) + ";"), tableSchema);
+		} finally {
+			st.close();
+		}
+		if (columns.getNumberOfRows() == 0)
+			throw new EmptySetException("Il resultset e' vuoto");
+		return columns;
+	}
+	/**
+	 * Estrae in un solo passaggio le transazioni distinte della tabella table il
+	 * cui valore della colonna keyColumn è maggiore di after e non maggiore di
+	 * upTo, e le memorizza per colonne.
+	 * La colonna keyColumn può non appartenere allo schema.
+	 * @param table nome della tabella.
+	 * @param tableSchema schema della tabella.
+	 * @param keyColumn nome della colonna chiave o temporale.
+	 * @param after limite inferiore escluso, null per nessun limite.
+	 * @param upTo limite superiore incluso.
+	 * @return transazioni distinte memorizzate per colonne, eventualmente nessuna.
+	 * @throws SQLException eccezione per errore SQL o nome di colonna non valido
+	 */
+	public TableColumns getDistinctColumns(String table, TableSchema tableSchema, String keyColumn, Object after, Object upTo)
+			throws SQLException {
+		String key = quote(keyColumn);
+		String query = selectDistinct(table, tableSchema) + " WHERE " + key + " <= ?"
+				+ (after != null ? " AND " + key + " > ?" : "") + ";";
+		PreparedStatement st = db.getConnection().prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+		try {
+			st.setFetchSize(FETCH_SIZE);
+			st.setObject(1, upTo);
+			if (after != null)
+				st.setObject(2, after);
+			return readColumns(st.executeQuery(), tableSchema);
+		} finally {
+			st.close();
+		}
+	}
+	/**
+	 * Interfaccia BlockConsumer che riceve i blocchi di transazioni letti da scan.
+	 */
+	public interface BlockConsumer {
+		/**
+		 * Elabora un blocco di transazioni.
+		 * @param keys valori della colonna chiave di ciascuna transazione.
+		 * @param rows valori delle colonne lette di ciascuna transazione.
+		 * @throws SQLException eccezione per errore SQL
+		 */
+		void accept(Object[] keys, Object[][] rows) throws SQLException;
+	}
+	/**
+	 * Legge in un solo passaggio, con un cursore in avanti, la colonna keyColumn
+	 * e le colonne columns di tutte le righe della tabella table e le consegna a
+	 * consumer a blocchi di al più blockSize transazioni, così che in memoria
+	 * resti un solo blocco alla volta.
+	 * @param table nome della tabella.
+	 * @param keyColumn nome della colonna chiave.
+	 * @param columns nomi delle colonne da leggere.
+	 * @param blockSize numero massimo di transazioni per blocco.
+	 * @param consumer destinatario dei blocchi.
+	 * @return numero di transazioni lette.
+	 * @throws SQLException eccezione per errore SQL o nome non valido
+	 */
+	public int scan(String table, String keyColumn, String[] columns, int blockSize, BlockConsumer consumer)
+			throws SQLException {
+		StringBuilder query = new StringBuilder("SELECT ").append(quote(keyColumn));
+		for (String column : columns)
+			query.append(", ").append(quote(column));
+		query.append(" FROM ").append(quote(table)).append(";");
+		int m = columns.length;
+		int count = 0;
+		Statement st = db.getConnection().createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+		try {
+			st.setFetchSize(FETCH_SIZE);
+			ResultSet rs = st.executeQuery(query.toString());
+			try {
+				Object[] keys = new Object[blockSize];
+				Object[][] rows = new Object[blockSize][];
+				int size = 0;
+				while (rs.next()) {
+					keys[size] = rs.getObject(1);
+					Object[] row = new Object[m];
+					for (int j = 0; j < m; j++)
+						row[j] = rs.getObject(j + 2);
+					rows[size++] = row;
+					if (size == blockSize) {
+						consumer.accept(keys, rows);
+						keys = new Object[blockSize];
+						rows = new Object[blockSize][];
+						count += size;
+						size = 0;
+					}
+				}
+				if (size > 0) {
+					consumer.accept(Arrays.copyOf(keys, size), Arrays.copyOf(rows, size));
+					count += size;
+				}
+			} finally {
+				rs.close();
+			}
+		} finally {
+			st.close();
+		}
+		return count;
+	}
+	/**
+	 * Restituisce il tipo SQL della colonna column della tabella table, con la
+	 * lunghezza per i tipi carattere, ad esempio per creare una colonna dello stesso tipo.
+	 * @param table nome della tabella.
+	 * @param column nome della colonna.
+	 * @return tipo SQL della colonna.
+	 * @throws SQLException eccezione per errore SQL o colonna non trovata
+	 */
+	public String getColumnType(String table, String column) throws SQLException {
+		ResultSet rs = db.getConnection().getMetaData().getColumns(null, null, table, column);
+		try {
+			if (!rs.next())
+				throw new SQLException("Colonna non trovata: " + table + "." + column);
+			String type = rs.getString("TYPE_NAME");
+			if (type.toUpperCase().contains("CHAR"))
+				type += "(" + rs.getInt("COLUMN_SIZE") + ")";
+			return type;
+		} finally {
+			rs.close();
+		}
+	}
+	/**
+	 * Restituisce il valore massimo della colonna column della tabella table.
+	 * @param table nome della tabella.
+	 * @param column nome della colonna, anche esterna allo schema.
+	 * @return valore massimo, null se la tabella è vuota.
+	 * @throws SQLException eccezione per errore SQL o nome di colonna non valido
+	 */
+	public Object getMaxValue(String table, String column) throws SQLException {
+		Statement st = db.getConnection().createStatement();
+		try {
+			ResultSet rs = st.executeQuery("SELECT MAX(" + quote(column) + ") FROM " + quote(table) + ";");
+			try {
+				return rs.next() ? rs.getObject(1) : null;
+			} finally {
+				rs.close();
+			}
+		} finally {
+			st.close();
+		}
+	}
+	/**
+	 * Verifica che identifier sia un nome SQL semplice e lo racchiude tra apici inversi.
+	 * @param identifier nome di tabella o di colonna.
+	 * @return nome racchiuso tra apici inversi.
+	 * @throws SQLException se il nome contiene caratteri diversi da lettere, cifre e _
+	 */
+	public static String quote(String identifier) throws SQLException {
+		if (identifier == null || !identifier.matches("[A-Za-z_][A-Za-z0-9_]*"))
+			throw new SQLException("Nome non valido: " + identifier);
+		return "`" + identifier + "`";
+	}
+	/**
+	 * Formula l'interrogazione che estrae le transazioni distinte, limitata alle
+	 * colonne dello schema.
+	 * @param table nome della tabella.
+	 * @param tableSchema schema della tabella.
+	 * @return interrogazione SQL senza terminatore.
+	 */
+	private static String selectDistinct(String table, TableSchema tableSchema) {
+		StringBuilder query = new StringBuilder("SELECT DISTINCT ");
+		for (int j = 0; j < tableSchema.getNumberOfAttributes(); j++) {
+			if (j > 0)
+				query.append(", ");
+			query.append(tableSchema.getColumn(j).getColumnName());
+		}
+		return query.append(" FROM ").append(table).toString();
+	}
+	/**
+	 * Legge il resultset con il cursore in avanti e memorizza le transazioni per
+	 * colonne, calcolando minimo e massimo delle colonne numeriche e i dizionari
+	 * delle colonne di tipo stringa. Chiude il resultset.
+	 * @param rs resultset con le colonne dello schema, nello stesso ordine.
+	 * @param tableSchema schema della tabella.
+	 * @return transazioni memorizzate per colonne.
+	 * @throws SQLException eccezione per errore SQL
+	 */
+	private static TableColumns readColumns(ResultSet rs, TableSchema tableSchema) throws SQLException {
+		int m = tableSchema.getNumberOfAttributes();
+		boolean[] number = new boolean[m];
+		for (int j = 0; j < m; j++)
+			number[j] = tableSchema.getColumn(j).isNumber();
+		TableColumns columns = new TableColumns(tableSchema, FETCH_SIZE);
+		try {
+			while (rs.next()) {
+				int row = columns.addRow();
+				for (int j = 0; j < m; j++) {
+					if (number[j])
+						columns.setNumber(row, j, rs.getDouble(j + 1));
+					else
+						columns.setString(row, j, rs.getString(j + 1));
+				}
+			}
+		} finally {
+			rs.close();
+		}
+		columns.complete();
+		return columns;
+	}
 	/**
 	 * Formula ed esegue una interrogazione SQL per estrarre i valori distinti
 	 * ordinati di column.
@@ -0,0 +1,118 @@
+package mining;
+
+import java.sql.SQLException;
+
+import data.Data;
+import database.AssignmentWriter;
+import database.DbAccess;
+import database.TableData;
+
+/**
+ * Classe AssignmentExport che scrive nel database l'assegnamento delle
+ * transazioni ai cluster, con un AssignmentWriter.
+ * Le righe sono scritte man mano che vengono calcolate, senza costruire la
+ * rappresentazione testuale dei cluster.
+ */
+public final class AssignmentExport {
+    /**
+     * Tipo SQL delle colonne chiave che corrispondono ad attributi discreti.
+     */
+    private static final String DISCRETE_TYPE = "VARCHAR(255)";
+
+    /**
+     * Costruttore privato: la classe ha solo metodi statici.
+     */
+    private AssignmentExport() {
+    }
+
+    /**
+     * Scrive nella tabella table, per ciascuna transazione di data, i valori
+     * degli attributi, che identificano la transazione distinta, l'indice del
+     * cluster di miner a cui è assegnata e la distanza dal suo centroide.
+     * @param miner modello con l'assegnamento delle transazioni di data
+     * @param data insieme di dati su cui è stato eseguito il modello
+     * @param db accesso al database, con la connessione già inizializzata
+     * @param table nome della tabella di destinazione
+     * @param config parametri di scrittura (batch di inserimento e intervallo di conferma)
+     * @return numero di righe scritte
+     * @throws SQLException eccezione per errore SQL
+     * @throws IllegalArgumentException se il modello non contiene l'assegnamento delle transazioni di data
+     */
+    public static int writeAssignment(KmeansMiner miner, Data data, DbAccess db, String table, KmeansConfig config)
+            throws SQLException {
+        ClusterSet C = miner.getC();
+        int[] assignment = C.getAssignment();
+        int n = data.getNumberOfExamples();
+        if (assignment == null || assignment.length != n)
+            throw new IllegalArgumentException("Il modello non contiene l'assegnamento del dataset corrente");
+        int m = data.getNumberOfAttributes();
+        String[] names = new String[m];
+        String[] types = new String[m];
+        for (int j = 0; j < m; j++) {
+            names[j] = data.getAttributeName(j);
+            types[j] = data.getContinuousColumn(j) != null ? "DOUBLE" : DISCRETE_TYPE;
+        }
+        AssignmentKernel kernel = new AssignmentKernel(data, C.getNumberOfClusters());
+        kernel.loadCentroids(C);
+        AssignmentKernel.Scratch scratch = kernel.newScratch();
+        try (AssignmentWriter writer = new AssignmentWriter(db, table, names, types, config.getInsertBatchSize(),
+                config.getCommitInterval())) {
+            for (int i = 0; i < n; i++) {
+                if (assignment[i] < 0)
+                    continue;
+                for (int j = 0; j < m; j++) {
+                    double[] continuous = data.getContinuousColumn(j);
+                    if (continuous != null)
+                        writer.setKey(j, continuous[i]);
+                    else
+                        writer.setKey(j, data.getAttributeValue(i, j));
+                }
+                writer.add(assignment[i], kernel.distance(i, scratch, assignment[i]));
+            }
+            writer.commit();
+            return writer.getRowsWritten();
+        }
+    }
+
+    /**
+     * Assegna ai cluster di model tutte le righe della tabella sourceTable e
+     * scrive nella tabella targetTable, per ciascuna, il valore della colonna
+     * keyColumn, l'indice del cluster più vicino e la distanza dal suo centroide.
+     * La tabella di origine è letta a blocchi di LloydIteration.BLOCK_SIZE righe,
+     * per cui in memoria resta un solo blocco alla volta; deve contenere una
+     * colonna per ciascun attributo del modello, con lo stesso nome.
+     * @param model modello salvato
+     * @param source accesso al database di origine, con la connessione già inizializzata
+     * @param sourceTable nome della tabella di origine
+     * @param keyColumn nome della colonna chiave della tabella di origine
+     * @param target accesso al database di destinazione, con una connessione
+     * diversa da quella di source
+     * @param targetTable nome della tabella di destinazione
+     * @param config parametri di scrittura (batch di inserimento e intervallo di conferma)
+     * @return numero di righe scritte
+     * @throws SQLException eccezione per errore SQL
+     * @throws IllegalArgumentException se una riga non è compatibile con gli attributi del modello
+     */
+    public static int scoreTable(KmeansMiner model, DbAccess source, String sourceTable, String keyColumn,
+            DbAccess target, String targetTable, KmeansConfig config) throws SQLException {
+        Data schema = Data.schemaOf(model.getC().get(0).getCentroid());
+        String[] columns = new String[schema.getNumberOfAttributes()];
+        for (int j = 0; j < columns.length; j++)
+            columns[j] = schema.getAttributeName(j);
+        TableData table = new TableData(source);
+        String keyType = table.getColumnType(sourceTable, keyColumn);
+        try (AssignmentWriter writer = new AssignmentWriter(target, targetTable, new String[] { keyColumn },
+                new String[] { keyType }, config.getInsertBatchSize(), config.getCommitInterval())) {
+            table.scan(sourceTable, keyColumn, columns, LloydIteration.BLOCK_SIZE, (keys, rows) -> {
+                double[] distances = new double[rows.length];
+                int[] clusters = model.predict(rows, distances);
+                for (int i = 0; i < rows.length; i++) {
+                    writer.setKey(0, keys[i]);
+                    writer.add(clusters[i], distances[i]);
+                }
+            });
+            writer.commit();
+            return writer.getRowsWritten();
+        }
+    }
+}
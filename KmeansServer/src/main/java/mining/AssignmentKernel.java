@@ -0,0 +1,354 @@
+package mining;
+
+import java.util.Arrays;
+
+import data.Data;
+
+/**
+ * Classe AssignmentKernel che calcola la distanza tra le transazioni di un
+ * dataset e i centroidi di un ClusterSet.
+ * La distanza è la stessa di Tuple.getDistance: somma delle differenze assolute
+ * dei valori continui scalati più il numero di valori discreti diversi.
+ * Legge direttamente le colonne primitive di Data e una copia piatta dei
+ * centroidi, per cui il calcolo non alloca oggetti.
+ */
+final class AssignmentKernel {
+    /**
+     * Colonne degli attributi continui.
+     */
+    private final double[][] continuous;
+    /**
+     * Estremi inferiori degli attributi continui.
+     */
+    private final double[] min;
+    /**
+     * Ampiezze (max - min) degli attributi continui.
+     */
+    private final double[] range;
+    /**
+     * Indici di attributo degli attributi continui.
+     */
+    private final int[] continuousIndex;
+    /**
+     * Colonne dei codici degli attributi discreti.
+     */
+    private final int[][] discrete;
+    /**
+     * Indici di attributo degli attributi discreti.
+     */
+    private final int[] discreteIndex;
+    /**
+     * Numero di centroidi.
+     */
+    private final int k;
+    /**
+     * Valori continui scalati dei centroidi: il valore j del centroide c è in posizione c * continuous.length + j.
+     */
+    private final double[] centroidScaled;
+    /**
+     * Codici discreti dei centroidi: il codice j del centroide c è in posizione c * discrete.length + j.
+     */
+    private final int[] centroidCodes;
+    /**
+     * Valori continui scalati dei centroidi prima dell'ultimo caricamento.
+     */
+    private final double[] previousScaled;
+    /**
+     * Codici discreti dei centroidi prima dell'ultimo caricamento.
+     */
+    private final int[] previousCodes;
+    /**
+     * Distanza percorsa da ciascun centroide nell'ultimo caricamento.
+     */
+    private final double[] shift;
+    /**
+     * Metà della distanza tra ciascun centroide e il centroide a esso più vicino.
+     */
+    private final double[] halfSeparation;
+    /**
+     * Vale true dopo il primo caricamento dei centroidi.
+     */
+    private boolean loaded;
+
+    /**
+     * Spazio di lavoro di un thread che usa il kernel.
+     */
+    static final class Scratch {
+        /**
+         * Valori continui scalati della transazione corrente.
+         */
+        final double[] row;
+        /**
+         * Distanza della transazione dal centroide più vicino, calcolata dall'ultima chiamata a nearest.
+         */
+        double distance;
+        /**
+         * Distanza della transazione dal secondo centroide più vicino, calcolata
+         * dall'ultima chiamata a nearest (infinita se c'è un solo centroide).
+         */
+        double second;
+
+        /**
+         * Costruttore della classe Scratch.
+         * @param size numero di attributi continui
+         */
+        Scratch(int size) {
+            this.row = new double[size];
+        }
+    }
+
+    /**
+     * Costruttore della classe AssignmentKernel.
+     * @param data dataset
+     * @param k numero di centroidi
+     */
+    AssignmentKernel(Data data, int k) {
+        int continuousCount = 0;
+        for (int a = 0; a < data.getNumberOfAttributes(); a++) {
+            if (data.getContinuousColumn(a) != null)
+                continuousCount++;
+        }
+        continuous = new double[continuousCount][];
+        min = new double[continuousCount];
+        range = new double[continuousCount];
+        continuousIndex = new int[continuousCount];
+        discrete = new int[data.getNumberOfAttributes() - continuousCount][];
+        discreteIndex = new int[discrete.length];
+        int c = 0, d = 0;
+        for (int a = 0; a < data.getNumberOfAttributes(); a++) {
+            if (data.getContinuousColumn(a) != null) {
+                continuous[c] = data.getContinuousColumn(a);
+                min[c] = data.getMin(a);
+                range[c] = data.getMax(a) - data.getMin(a);
+                continuousIndex[c++] = a;
+            } else {
+                discrete[d] = data.getDiscreteColumn(a);
+                discreteIndex[d++] = a;
+            }
+        }
+        this.k = k;
+        centroidScaled = new double[k * continuous.length];
+        centroidCodes = new int[k * discrete.length];
+        previousScaled = new double[centroidScaled.length];
+        previousCodes = new int[centroidCodes.length];
+        shift = new double[k];
+        halfSeparation = new double[k];
+    }
+
+    /**
+     * Restituisce le colonne degli attributi continui.
+     * @return colonne continue
+     */
+    double[][] getContinuousColumns() {
+        return continuous;
+    }
+
+    /**
+     * Restituisce gli indici di attributo degli attributi continui.
+     * @return indici degli attributi continui
+     */
+    int[] getContinuousIndexes() {
+        return continuousIndex;
+    }
+
+    /**
+     * Restituisce le colonne dei codici degli attributi discreti.
+     * @return colonne discrete
+     */
+    int[][] getDiscreteColumns() {
+        return discrete;
+    }
+
+    /**
+     * Restituisce gli indici di attributo degli attributi discreti.
+     * @return indici degli attributi discreti
+     */
+    int[] getDiscreteIndexes() {
+        return discreteIndex;
+    }
+
+    /**
+     * Crea uno spazio di lavoro per un thread che usa il kernel.
+     * @return spazio di lavoro
+     */
+    Scratch newScratch() {
+        return new Scratch(continuous.length);
+    }
+
+    /**
+     * Copia i valori correnti dei centroidi di C, scalando quelli continui, e
+     * calcola lo spostamento di ciascun centroide rispetto al caricamento precedente.
+     * @param C insieme dei cluster
+     */
+    void loadCentroids(ClusterSet C) {
+        System.arraycopy(centroidScaled, 0, previousScaled, 0, centroidScaled.length);
+        System.arraycopy(centroidCodes, 0, previousCodes, 0, centroidCodes.length);
+        for (int c = 0; c < k; c++) {
+            double[] values = C.get(c).getValues();
+            for (int j = 0; j < continuous.length; j++)
+                centroidScaled[c * continuous.length + j] = (values[continuousIndex[j]] - min[j]) / range[j];
+            for (int j = 0; j < discrete.length; j++)
+                centroidCodes[c * discrete.length + j] = (int) values[discreteIndex[j]];
+            shift[c] = loaded ? distance(previousScaled, previousCodes, c, centroidScaled, centroidCodes, c) : 0;
+        }
+        loaded = true;
+    }
+
+    /**
+     * Restituisce lo spostamento di ciascun centroide nell'ultimo caricamento.
+     * @return spostamenti, indicizzati per centroide
+     */
+    double[] getShifts() {
+        return shift;
+    }
+
+    /**
+     * Calcola, per ciascun centroide, metà della distanza dal centroide a esso più vicino.
+     * Se una transazione dista dal proprio centroide meno di tale valore, per la
+     * disuguaglianza triangolare nessun altro centroide può essere più vicino.
+     * @return metà delle distanze minime, indicizzate per centroide
+     */
+    double[] computeHalfSeparation() {
+        Arrays.fill(halfSeparation, Double.POSITIVE_INFINITY);
+        for (int a = 0; a < k; a++) {
+            for (int b = a + 1; b < k; b++) {
+                double half = distance(centroidScaled, centroidCodes, a, centroidScaled, centroidCodes, b) / 2;
+                halfSeparation[a] = Math.min(halfSeparation[a], half);
+                halfSeparation[b] = Math.min(halfSeparation[b], half);
+            }
+        }
+        return halfSeparation;
+    }
+
+    /**
+     * Restituisce l'indice del centroide più vicino alla transazione row.
+     * A parità di distanza prevale il centroide di indice minore, come in ClusterSet.nearestCluster.
+     * La distanza minima viene memorizzata in scratch.distance, quella dal secondo
+     * centroide più vicino in scratch.second.
+     * @param row indice di riga
+     * @param scratch spazio di lavoro del thread chiamante
+     * @return indice del centroide più vicino
+     */
+    int nearest(int row, Scratch scratch) {
+        double[] scaled = scale(row, scratch);
+        int nearest = 0;
+        double minDistance = distance(row, scaled, 0);
+        double second = Double.POSITIVE_INFINITY;
+        for (int c = 1; c < k; c++) {
+            double distance = distance(row, scaled, c);
+            if (distance < minDistance) {
+                second = minDistance;
+                minDistance = distance;
+                nearest = c;
+            } else if (distance < second) {
+                second = distance;
+            }
+        }
+        scratch.distance = minDistance;
+        scratch.second = second;
+        return nearest;
+    }
+
+    /**
+     * Calcola la distanza tra la transazione row e il centroide c.
+     * @param row indice di riga
+     * @param scratch spazio di lavoro del thread chiamante
+     * @param c indice del centroide
+     * @return distanza
+     */
+    double distance(int row, Scratch scratch, int c) {
+        return distance(row, scale(row, scratch), c);
+    }
+
+    /**
+     * Calcola la somma delle distanze di ciascuna transazione dal centroide del
+     * cluster a cui è assegnata, con i centroidi dell'ultimo caricamento.
+     * @param assignment assegnamento delle transazioni ai cluster
+     * @return distanza totale
+     */
+    double totalDistance(int[] assignment) {
+        Scratch scratch = newScratch();
+        double total = 0;
+        for (int row = 0; row < assignment.length; row++)
+            total += distance(row, scratch, assignment[row]);
+        return total;
+    }
+
+    /**
+     * Calcola la distanza tra le transazioni a e b.
+     * @param a indice di riga
+     * @param b indice di riga
+     * @return distanza
+     */
+    double rowDistance(int a, int b) {
+        double distance = 0;
+        for (int j = 0; j < continuous.length; j++)
+            distance += Math.abs((continuous[j][a] - min[j]) / range[j] - (continuous[j][b] - min[j]) / range[j]);
+        int mismatches = 0;
+        for (int j = 0; j < discrete.length; j++) {
+            if (discrete[j][a] != discrete[j][b])
+                mismatches++;
+        }
+        return distance + mismatches;
+    }
+
+    /**
+     * Scala i valori continui della transazione row nello spazio di lavoro.
+     * @param row indice di riga
+     * @param scratch spazio di lavoro del thread chiamante
+     * @return valori continui scalati
+     */
+    private double[] scale(int row, Scratch scratch) {
+        double[] scaled = scratch.row;
+        for (int j = 0; j < continuous.length; j++)
+            scaled[j] = (continuous[j][row] - min[j]) / range[j];
+        return scaled;
+    }
+
+    /**
+     * Calcola la distanza tra la transazione row, i cui valori continui scalati
+     * sono in scaled, e il centroide c.
+     * @param row indice di riga
+     * @param scaled valori continui scalati della transazione
+     * @param c indice del centroide
+     * @return distanza
+     */
+    private double distance(int row, double[] scaled, int c) {
+        double distance = 0;
+        int base = c * continuous.length;
+        for (int j = 0; j < scaled.length; j++)
+            distance += Math.abs(scaled[j] - centroidScaled[base + j]);
+        int mismatches = 0;
+        base = c * discrete.length;
+        for (int j = 0; j < discrete.length; j++) {
+            if (discrete[j][row] != centroidCodes[base + j])
+                mismatches++;
+        }
+        return distance + mismatches;
+    }
+
+    /**
+     * Calcola la distanza tra il centroide a di una copia dei centroidi e il
+     * centroide b di un'altra.
+     * @param scaledA valori continui scalati della prima copia
+     * @param codesA codici discreti della prima copia
+     * @param a indice del centroide nella prima copia
+     * @param scaledB valori continui scalati della seconda copia
+     * @param codesB codici discreti della seconda copia
+     * @param b indice del centroide nella seconda copia
+     * @return distanza
+     */
+    private double distance(double[] scaledA, int[] codesA, int a, double[] scaledB, int[] codesB, int b) {
+        double distance = 0;
+        int nc = continuous.length;
+        for (int j = 0; j < nc; j++)
+            distance += Math.abs(scaledA[a * nc + j] - scaledB[b * nc + j]);
+        int mismatches = 0;
+        int nd = discrete.length;
+        for (int j = 0; j < nd; j++) {
+            if (codesA[a * nd + j] != codesB[b * nd + j])
+                mismatches++;
+        }
+        return distance + mismatches;
+    }
+}
@@ -0,0 +1,371 @@
+package mining;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import data.Data;
+import data.OutOfRangeSampleSize;
+
+/**
+ * Classe CentroidSeeding che sceglie le transazioni da usare come centroidi
+ * iniziali, secondo la strategia indicata in KmeansConfig.
+ * Oltre alla scelta casuale di Data.sampling offre k-means++, che sceglie ogni
+ * nuovo centroide con probabilità proporzionale al quadrato della distanza dai
+ * centroidi già scelti, e k-means||, che campiona in parallelo in pochi passaggi
+ * un insieme di candidati e vi applica k-means++ pesato.
+ * I passaggi sul dataset sono divisi in blocchi come in LloydIteration e il
+ * risultato non dipende dal numero di thread.
+ */
+final class CentroidSeeding {
+    /**
+     * Numero di passaggi di campionamento di k-means||.
+     */
+    private static final int ROUNDS = 5;
+    /**
+     * Dataset.
+     */
+    private final Data data;
+    /**
+     * Kernel per il calcolo delle distanze tra transazioni.
+     */
+    private final AssignmentKernel kernel;
+    /**
+     * Pool di thread.
+     */
+    private final ForkJoinPool pool;
+    /**
+     * Numero di thread usati.
+     */
+    private final int lanes;
+    /**
+     * Generatore di numeri casuali.
+     */
+    private final Random rand;
+    /**
+     * Numero di blocchi del dataset.
+     */
+    private final int numberOfBlocks;
+    /**
+     * Quadrato della distanza di ciascuna transazione dal candidato più vicino.
+     */
+    private double[] weight;
+    /**
+     * Indice del candidato più vicino a ciascuna transazione.
+     */
+    private int[] closest;
+    /**
+     * Somma di weight per blocco.
+     */
+    private double[] blockWeight;
+
+    /**
+     * Costruttore della classe CentroidSeeding.
+     * @param data dataset
+     * @param config parametri di esecuzione
+     * @param pool pool di thread
+     * @param rand generatore di numeri casuali
+     */
+    CentroidSeeding(Data data, KmeansConfig config, ForkJoinPool pool, Random rand) {
+        this.data = data;
+        this.kernel = new AssignmentKernel(data, 0);
+        this.pool = pool;
+        this.rand = rand;
+        int n = data.getNumberOfExamples();
+        numberOfBlocks = Math.max(1, (n + LloydIteration.BLOCK_SIZE - 1) / LloydIteration.BLOCK_SIZE);
+        lanes = Math.min(config.getParallelism(), numberOfBlocks);
+    }
+
+    /**
+     * Sceglie k transazioni distinte con la strategia seeding.
+     * @param k numero di centroidi
+     * @param seeding strategia di scelta
+     * @return indici di riga dei centroidi
+     * @throws OutOfRangeSampleSize se k non è compreso tra 1 e il numero di transazioni distinte
+     */
+    int[] select(int k, KmeansConfig.Seeding seeding) throws OutOfRangeSampleSize {
+        int n = data.getNumberOfExamples();
+        if (k < 1 || k > n)
+            throw new OutOfRangeSampleSize("Inserire un numero di cluster compreso tra 1 e " + n + "");
+        switch (seeding) {
+            case RANDOM:
+                return data.sampling(k);
+            case KMEANS_PARALLEL:
+                return kmeansParallel(k);
+            default:
+                return kmeansPlusPlus(k);
+        }
+    }
+
+    /**
+     * Sceglie extra nuovi centroidi con k-means++ a partire dai centroidi di
+     * previous: ciascuno è scelto con probabilità proporzionale al quadrato della
+     * distanza dal centroide più vicino tra quelli di previous e quelli già scelti.
+     * @param previous insieme di cluster di partenza
+     * @param extra numero di centroidi da aggiungere
+     * @return indici di riga dei nuovi centroidi
+     * @throws OutOfRangeSampleSize se il dataset non ha abbastanza transazioni distinte
+     */
+    int[] extend(ClusterSet previous, int extra) throws OutOfRangeSampleSize {
+        int k = previous.getNumberOfClusters() + extra;
+        int n = data.getNumberOfExamples();
+        if (k > n)
+            throw new OutOfRangeSampleSize("Inserire un numero di cluster compreso tra 1 e " + n + "");
+        reset();
+        AssignmentKernel centroids = new AssignmentKernel(data, previous.getNumberOfClusters());
+        centroids.loadCentroids(previous);
+        ParallelTasks.run(pool, lanes, lanes, lane -> {
+            AssignmentKernel.Scratch s = centroids.newScratch();
+            for (int b = lane; b < numberOfBlocks; b += lanes) {
+                double sum = 0;
+                int end = Math.min(n, (b + 1) * LloydIteration.BLOCK_SIZE);
+                for (int i = b * LloydIteration.BLOCK_SIZE; i < end; i++) {
+                    centroids.nearest(i, s);
+                    weight[i] = s.distance * s.distance;
+                    sum += weight[i];
+                }
+                blockWeight[b] = sum;
+            }
+        });
+        double total = 0;
+        for (double w : blockWeight)
+            total += w;
+        int[] centers = new int[extra];
+        for (int c = 0; c < extra; c++) {
+            if (c > 0)
+                total = addCandidates(centers, c - 1, c);
+            if (total <= 0)
+                throw tooFewDistinct(k);
+            centers[c] = sample(rand.nextDouble() * total);
+        }
+        return centers;
+    }
+
+    /**
+     * Sceglie k centroidi con k-means++: il primo a caso, ciascuno dei successivi
+     * con probabilità proporzionale al quadrato della distanza dal centroide già
+     * scelto più vicino.
+     * @param k numero di centroidi
+     * @return indici di riga dei centroidi
+     * @throws OutOfRangeSampleSize se il dataset ha meno di k transazioni distinte
+     */
+    private int[] kmeansPlusPlus(int k) throws OutOfRangeSampleSize {
+        reset();
+        int[] centers = new int[k];
+        centers[0] = rand.nextInt(data.getNumberOfExamples());
+        for (int c = 1; c < k; c++) {
+            double total = addCandidates(centers, c - 1, c);
+            if (total <= 0)
+                throw tooFewDistinct(k);
+            centers[c] = sample(rand.nextDouble() * total);
+        }
+        return centers;
+    }
+
+    /**
+     * Sceglie k centroidi con k-means||.
+     * Per ROUNDS passaggi ogni transazione diventa candidata indipendentemente,
+     * con probabilità 2k volte il proprio peso diviso il peso totale; i candidati
+     * sono poi pesati con il numero di transazioni a cui sono i più vicini, e tra
+     * di essi si scelgono k centroidi con k-means++ pesato.
+     * @param k numero di centroidi
+     * @return indici di riga dei centroidi
+     * @throws OutOfRangeSampleSize se il dataset ha meno di k transazioni distinte
+     */
+    private int[] kmeansParallel(int k) throws OutOfRangeSampleSize {
+        reset();
+        int n = data.getNumberOfExamples();
+        int[] candidates = new int[Math.max(16, 2 * k)];
+        candidates[0] = rand.nextInt(n);
+        int count = 1;
+        double total = addCandidates(candidates, 0, 1);
+        double oversampling = 2.0 * k;
+        long seed = rand.nextLong();
+        int[][] sampled = new int[numberOfBlocks][];
+        int[] sampledCount = new int[numberOfBlocks];
+        for (int round = 0; round < ROUNDS && total > 0; round++) {
+            final double psi = total;
+            final long roundSeed = seed + round * 0x9E3779B97F4A7C15L;
+            ParallelTasks.run(pool, lanes, lanes, lane -> {
+                for (int b = lane; b < numberOfBlocks; b += lanes) {
+                    Random blockRand = new Random(roundSeed + b);
+                    int m = 0;
+                    int start = b * LloydIteration.BLOCK_SIZE;
+                    int end = Math.min(n, start + LloydIteration.BLOCK_SIZE);
+                    int[] rows = sampled[b] != null ? sampled[b] : new int[end - start];
+                    for (int i = start; i < end; i++) {
+                        if (blockRand.nextDouble() < oversampling * weight[i] / psi)
+                            rows[m++] = i;
+                    }
+                    sampled[b] = rows;
+                    sampledCount[b] = m;
+                }
+            });
+            int from = count;
+            for (int b = 0; b < numberOfBlocks; b++) {
+                for (int m = 0; m < sampledCount[b]; m++) {
+                    if (count == candidates.length)
+                        candidates = Arrays.copyOf(candidates, 2 * count);
+                    candidates[count++] = sampled[b][m];
+                }
+            }
+            if (count > from)
+                total = addCandidates(candidates, from, count);
+        }
+        if (count < k)
+            return kmeansPlusPlus(k);
+
+        double[] candidateWeight = new double[count];
+        for (int i = 0; i < n; i++)
+            candidateWeight[closest[i]]++;
+        return weightedPlusPlus(k, Arrays.copyOf(candidates, count), candidateWeight);
+    }
+
+    /**
+     * Sceglie k centroidi tra i candidati con k-means++ pesato: la probabilità di
+     * un candidato è il suo peso per il quadrato della distanza dal centroide già
+     * scelto più vicino.
+     * @param k numero di centroidi
+     * @param candidates indici di riga dei candidati
+     * @param candidateWeight peso di ciascun candidato
+     * @return indici di riga dei centroidi
+     * @throws OutOfRangeSampleSize se i candidati distinti sono meno di k
+     */
+    private int[] weightedPlusPlus(int k, int[] candidates, double[] candidateWeight) throws OutOfRangeSampleSize {
+        int m = candidates.length;
+        double[] nearest = new double[m];
+        Arrays.fill(nearest, Double.POSITIVE_INFINITY);
+        int[] centers = new int[k];
+        double total = 0;
+        for (double w : candidateWeight)
+            total += w;
+        int chosen = pick(candidateWeight, null, rand.nextDouble() * total);
+        for (int c = 0; c < k; c++) {
+            if (c > 0) {
+                total = 0;
+                for (int j = 0; j < m; j++)
+                    total += candidateWeight[j] * nearest[j];
+                if (total <= 0)
+                    throw tooFewDistinct(k);
+                chosen = pick(candidateWeight, nearest, rand.nextDouble() * total);
+            }
+            centers[c] = candidates[chosen];
+            for (int j = 0; j < m; j++) {
+                double d = kernel.rowDistance(candidates[j], centers[c]);
+                nearest[j] = Math.min(nearest[j], d * d);
+            }
+        }
+        return centers;
+    }
+
+    /**
+     * Restituisce la posizione in cui la somma cumulata di weight[j] * factor[j]
+     * supera target.
+     * @param weight pesi
+     * @param factor fattori dei pesi, null se pari a 1
+     * @param target valore da superare
+     * @return posizione scelta
+     */
+    private static int pick(double[] weight, double[] factor, double target) {
+        int last = 0;
+        double cumulative = 0;
+        for (int j = 0; j < weight.length; j++) {
+            double w = factor == null ? weight[j] : weight[j] * factor[j];
+            if (w > 0) {
+                cumulative += w;
+                last = j;
+                if (cumulative > target)
+                    return j;
+            }
+        }
+        return last;
+    }
+
+    /**
+     * Inizializza i pesi delle transazioni prima di una scelta.
+     */
+    private void reset() {
+        int n = data.getNumberOfExamples();
+        weight = new double[n];
+        closest = new int[n];
+        blockWeight = new double[numberOfBlocks];
+        Arrays.fill(weight, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Aggiunge i candidati candidates[from..to) e aggiorna, per ogni transazione,
+     * il quadrato della distanza dal candidato più vicino e il suo indice.
+     * @param candidates indici di riga dei candidati
+     * @param from primo candidato da aggiungere
+     * @param to candidato successivo all'ultimo da aggiungere
+     * @return somma dei pesi di tutte le transazioni
+     */
+    private double addCandidates(int[] candidates, int from, int to) {
+        int n = data.getNumberOfExamples();
+        ParallelTasks.run(pool, lanes, lanes, lane -> {
+            for (int b = lane; b < numberOfBlocks; b += lanes) {
+                double sum = 0;
+                int start = b * LloydIteration.BLOCK_SIZE;
+                int end = Math.min(n, start + LloydIteration.BLOCK_SIZE);
+                for (int i = start; i < end; i++) {
+                    for (int c = from; c < to; c++) {
+                        double d = kernel.rowDistance(i, candidates[c]);
+                        if (d * d < weight[i]) {
+                            weight[i] = d * d;
+                            closest[i] = c;
+                        }
+                    }
+                    sum += weight[i];
+                }
+                blockWeight[b] = sum;
+            }
+        });
+        double total = 0;
+        for (double w : blockWeight)
+            total += w;
+        return total;
+    }
+
+    /**
+     * Restituisce la transazione in cui la somma cumulata dei pesi supera target,
+     * cercando prima il blocco tramite le somme per blocco.
+     * @param target valore da superare, minore del peso totale
+     * @return indice di riga scelto
+     */
+    private int sample(double target) {
+        int n = data.getNumberOfExamples();
+        int b = 0;
+        while (b < numberOfBlocks - 1 && target >= blockWeight[b]) {
+            target -= blockWeight[b];
+            b++;
+        }
+        int start = b * LloydIteration.BLOCK_SIZE;
+        int end = Math.min(n, start + LloydIteration.BLOCK_SIZE);
+        int last = -1;
+        for (int i = start; i < end; i++) {
+            if (weight[i] > 0) {
+                last = i;
+                target -= weight[i];
+                if (target < 0)
+                    return i;
+            }
+        }
+        if (last >= 0)
+            return last;
+        // errore di arrotondamento: si sceglie l'ultima transazione di peso positivo
+        for (int i = n - 1; i >= 0; i--) {
+            if (weight[i] > 0)
+                return i;
+        }
+        return 0;
+    }
+
+    /**
+     * Crea l'eccezione per un dataset con meno di k transazioni distinte.
+     * @param k numero di centroidi richiesti
+     * @return eccezione
+     */
+    private static OutOfRangeSampleSize tooFewDistinct(int k) {
+        return new OutOfRangeSampleSize("Il dataset contiene meno di " + k + " transazioni distinte");
+    }
+}
@@ -1,15 +1,15 @@
 package mining;
 
 import java.io.Serializable;
-import java.util.Set;
-import java.util.HashSet;
+import java.util.Arrays;
 
 import data.Data;
 import data.Tuple;
 
 /**
  * Classe Cluster che rappresenta un cluster.
- * Un cluster e' rappresentato da un centroide e da un insieme di transazioni.
+ * Un cluster e' rappresentato da un centroide; l'appartenenza delle transazioni
+ * ai cluster e' memorizzata in ClusterSet.
  * Implementa l'interfaccia Serializable.
  */
 public class Cluster implements Serializable {
@@ -19,18 +19,30 @@ public class Cluster implements Serializable {
 	 */
 	private Tuple centroid;
 	/**
-	 * Insieme di transazioni clusterizzate.
-	 * E' rappresentato da un insieme di interi.
+	 * Valori primitivi del centroide, indicizzati per attributo.
+	 * Per un attributo continuo contiene la media, per uno discreto il codice del valore.
 	 */
-	private Set<Integer> clusteredData;
+	private final double[] values;
+	/**
+	 * Somme correnti dei valori continui delle transazioni del cluster,
+	 * indicizzate per attributo. Sono mantenute solo durante l'algoritmo k-means.
+	 */
+	private transient double[] sums;
+	/**
+	 * Frequenze correnti dei codici discreti nelle transazioni del cluster,
+	 * indicizzate per attributo e per codice. Sono mantenute solo durante
+	 * l'algoritmo k-means.
+	 */
+	private transient int[][] frequencies;
 
 	/**
 	 * Costruttore della classe Cluster.
 	 * @param centroid centroide del cluster
+	 * @param values valori primitivi del centroide
 	 */
-	Cluster(Tuple centroid) {
+	Cluster(Tuple centroid, double[] values) {
 		this.centroid = centroid;
-		this.clusteredData = new HashSet<>();
+		this.values = values;
 	}
 
 	/**
@@ -42,38 +54,78 @@ public class Cluster implements Serializable {
 	}
 
 	/**
-	 * Calcola il centroide del cluster.
+	 * Restituisce i valori primitivi del centroide.
+	 * @return values del centroide
+	 */
+	double[] getValues() {
+		return values;
+	}
+
+	/**
+	 * Azzera le somme e le frequenze del cluster, dimensionandole sugli attributi di data.
 	 * @param data dataset
 	 */
-	protected void computeCentroid(Data data) {
-		for (int i = 0; i < centroid.getLength(); i++) {
-			centroid.get(i).update(data, clusteredData);
+	void resetStatistics(Data data) {
+		sums = new double[values.length];
+		frequencies = new int[values.length][];
+		for (int i = 0; i < values.length; i++) {
+			if (data.getDiscreteColumn(i) != null)
+				frequencies[i] = new int[data.getNumberOfDistinctValues(i)];
 		}
 	}
+
+	/**
+	 * Restituisce le somme correnti dei valori continui.
+	 * @return sums
+	 */
+	double[] getSums() {
+		return sums;
+	}
+
 	/**
-	 * Restituisce true se la tupla cambia il cluster.
-	 * @param id indice della tupla
-	 * @return data
+	 * Restituisce le frequenze correnti dei codici discreti.
+	 * @return frequencies
 	 */
-	protected boolean addData(int id) {
-		return clusteredData.add(id);
+	int[][] getFrequencies() {
+		return frequencies;
 	}
 
 	/**
-	 * verifica se una transazione e' clusterizzata nell'array corrente.
-	 * @param id indice della tupla
-	 * @return data è true se la transazione è clusterizzata nell'array corrente
+	 * Ricalcola il centroide dalle somme e dalle frequenze correnti:
+	 * media per gli attributi continui, codice più frequente per quelli discreti
+	 * (a parità di frequenza prevale il valore minore del dominio).
+	 * Un cluster vuoto conserva il centroide precedente e azzera le somme, per non
+	 * accumulare errori di arrotondamento.
+	 * @param data dataset
+	 * @param size numero di transazioni del cluster
 	 */
-	protected boolean contain(int id) {
-		return clusteredData.contains(id);
+	void updateCentroid(Data data, int size) {
+		if (size == 0) {
+			Arrays.fill(sums, 0);
+			return;
+		}
+		for (int i = 0; i < values.length; i++) {
+			if (frequencies[i] == null) {
+				values[i] = sums[i] / size;
+			} else {
+				int[] frequency = frequencies[i];
+				int mode = 0;
+				for (int code = 1; code < frequency.length; code++) {
+					if (frequency[code] > frequency[mode])
+						mode = code;
+				}
+				values[i] = mode;
+			}
+		}
+		setCentroid(data);
 	}
 
 	/**
-	 * Rimuove le tuple che hanno cambiato il cluster.
-	 * @param id indice della tupla
+	 * Ricostruisce la tupla del centroide dopo la modifica dei valori primitivi.
+	 * @param data dataset
 	 */
-	protected void removeTuple(int id) {
-		clusteredData.remove(id);
+	void setCentroid(Data data) {
+		centroid = data.getItemSet(values);
 	}
 
 	/**
@@ -81,31 +133,30 @@ public class Cluster implements Serializable {
 	 * @return str
 	 */
 	public String toString() {
-		String str = "Centroid=(";
+		StringBuilder str = new StringBuilder("Centroid=(");
 		for (int i = 0; i < centroid.getLength(); i++)
-			str += centroid.get(i) + ",";
-		str += ")";
-		return str;
+			str.append(centroid.get(i)).append(',');
+		str.append(')');
+		return str.toString();
 	}
 
 	/**
 	 * Converte il cluster in una stringa.
 	 * @param data dataset
+	 * @param clusteredData indici di riga delle transazioni del cluster
 	 * @return str
 	 */
-	public String toString(Data data) {
-		String str = "Centroid=(";
-		for (int i = 0; i < centroid.getLength(); i++)
-			str += centroid.get(i) + ",";
-		str += ")\nExamples:\n";
+	public String toString(Data data, int[] clusteredData) {
+		StringBuilder str = new StringBuilder(toString());
+		str.append("\nExamples:\n");
 
 		for (int i : clusteredData) {
-			str += " [";
+			str.append(" [");
 			for (int j = 0; j < data.getNumberOfAttributes(); j++)
-				str += data.getAttributeValue(i, j) + " ";
-			str += "] dist=" + getCentroid().getDistance(data.getItemSet(i)) + "\n";
+				str.append(data.getAttributeValue(i, j)).append(' ');
+			str.append("] dist=").append(getCentroid().getDistance(data.getItemSet(i))).append('\n');
 		}
-		str += "\nAvgDistance=" + getCentroid().avgDistance(data, clusteredData) + "\n";
-		return str;
+		str.append("\nAvgDistance=").append(getCentroid().avgDistance(data, clusteredData)).append('\n');
+		return str.toString();
 	}
 }
@@ -1,5 +1,7 @@
 package mining;
 import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Random;
 
 import data.Data;
 import data.OutOfRangeSampleSize;
@@ -19,6 +21,16 @@ public class ClusterSet implements Serializable {
      * posizione valida per la memorizzazione di un nuovo cluster in C.
      */
     private int i = 0;
+    /**
+     * Assegnamento delle transazioni ai cluster.
+     * assignment[id] è l'indice in C del cluster che contiene la transazione id,
+     * -1 se la transazione non è ancora stata assegnata.
+     */
+    private int[] assignment;
+    /**
+     * Numero di transazioni assegnate a ciascun cluster in C.
+     */
+    private int[] counts;
     /**
      * Costruttore della classe ClusterSet.
      * @param k numero di cluster
@@ -31,6 +43,30 @@ public class ClusterSet implements Serializable {
             throw new OutOfRangeSampleSize("Il numero di cluster deve essere maggiore di 0");
         }
     }
+    /**
+     * Ricostruisce un insieme di cluster a partire dai valori dei centroidi.
+     * @param schema dataset, anche senza transazioni, con gli attributi dei centroidi
+     * @param values valori primitivi di ciascun centroide
+     * @param assignment assegnamento delle transazioni ai cluster, oppure null se non disponibile
+     * @return insieme di cluster
+     * @throws OutOfRangeSampleSize se values è vuoto
+     */
+    static ClusterSet restore(Data schema, double[][] values, int[] assignment) throws OutOfRangeSampleSize {
+        if (values.length == 0)
+            throw new OutOfRangeSampleSize("Il numero di cluster deve essere maggiore di 0");
+        ClusterSet set = new ClusterSet(values.length);
+        for (double[] centroid : values)
+            set.add(new Cluster(schema.getItemSet(centroid), centroid));
+        set.counts = new int[values.length];
+        set.assignment = assignment;
+        if (assignment != null) {
+            for (int c : assignment) {
+                if (c >= 0)
+                    set.counts[c]++;
+            }
+        }
+        return set;
+    }
     /**
      * Assegna c a C[i] e incremente i.
      * @param c cluster
@@ -39,6 +75,13 @@ public class ClusterSet implements Serializable {
         this.C[i] = c;
         this.i++;
     }
+    /**
+     * Restituisce il numero di cluster.
+     * @return lunghezza di C
+     */
+    protected int getNumberOfClusters() {
+        return this.C.length;
+    }
     /**
      * restituisce C[i].
      * @param i indice del cluster
@@ -48,69 +91,132 @@ public class ClusterSet implements Serializable {
         return this.C[i];
     }
     /**
-     * Sceglie i centroidi, crea un cluster per ogni centroide e lo memorizza in C.
+     * Sceglie i centroidi con la strategia indicata in config, crea un cluster
+     * per ogni centroide e lo memorizza in C.
+     * @param data dataset
+     * @param config parametri di esecuzione
+     * @param rand generatore di numeri casuali usato per la scelta
+     * @throws OutOfRangeSampleSize eccezione per dimensione campione fuori range
+     */
+    protected void initializeCentroids(Data data, KmeansConfig config, Random rand) throws OutOfRangeSampleSize {
+        initializeCentroids(data, config, rand, null);
+    }
+    /**
+     * Inizializza i centroidi a partire da quelli di previous, se non è null:
+     * i suoi centroidi sono copiati e i restanti sono scelti con k-means++.
+     * Se previous è null sceglie tutti i centroidi con la strategia indicata in config.
      * @param data dataset
+     * @param config parametri di esecuzione
+     * @param rand generatore di numeri casuali usato per la scelta
+     * @param previous insieme con al più C.length cluster sullo stesso dataset, oppure null
      * @throws OutOfRangeSampleSize eccezione per dimensione campione fuori range
      */
-    protected void initializeCentroids(Data data) throws OutOfRangeSampleSize {
-        int centroidIndexes[] = data.sampling(C.length);
+    protected void initializeCentroids(Data data, KmeansConfig config, Random rand, ClusterSet previous) throws OutOfRangeSampleSize {
+        CentroidSeeding seeding = new CentroidSeeding(data, config, KmeansMiner.getPool(), rand);
+        int centroidIndexes[];
+        if (previous == null) {
+            centroidIndexes = seeding.select(C.length, config.getSeeding());
+        } else {
+            centroidIndexes = seeding.extend(previous, C.length - previous.getNumberOfClusters());
+            for (int c = 0; c < previous.getNumberOfClusters(); c++) {
+                double[] values = previous.get(c).getValues().clone();
+                add(new Cluster(data.getItemSet(values), values));
+            }
+        }
         for (int centroide : centroidIndexes) {
             Tuple centroidI = data.getItemSet(centroide);
-            add(new Cluster(centroidI));
+            add(new Cluster(centroidI, data.getValues(centroide)));
         }
+        assignment = new int[data.getNumberOfExamples()];
+        Arrays.fill(assignment, -1);
+        counts = new int[C.length];
     }
     /**
      * Calcola la distanza tra la tupla riferita da tuple,.
-     * ed il centroide di ciascun cluster in C e restituisce il cluster più vicino.
+     * ed il centroide di ciascun cluster in C e restituisce l'indice del cluster più vicino.
      * @param tuple tupla
-     * @return cluster
+     * @return indice del cluster
      */
-    protected Cluster nearestCluster(Tuple tuple) {
-        Cluster nearestCluster = C[0];
+    protected int nearestCluster(Tuple tuple) {
+        int nearestCluster = 0;
         double minDistance = tuple.getDistance(C[0].getCentroid());
         double distance;
         for (int i = 1; i < C.length; i++) {
             distance = tuple.getDistance(C[i].getCentroid());
             if (distance < minDistance) {
                 minDistance = distance;
-                nearestCluster = C[i];
+                nearestCluster = i;
             }
         }
         return nearestCluster;
     }
     /**
-     * Identifica e restituisce il cluster a cui la tupla rappresentante l'esempio.
-     * identificato da id.
-     * Se la tupla non è inclusa in nessun cluster restituisce null.
+     * Restituisce l'indice del cluster a cui appartiene la transazione identificata da id.
+     * Se la transazione non è inclusa in nessun cluster restituisce -1.
      * @param id indice della tupla
-     * @return cluster
+     * @return indice del cluster
      */
-    protected Cluster currentCluster(int id) {
-        for (Cluster c : C) {
-            if (c.contain(id))
-                return c;
-        }
-        return null;
+    protected int currentCluster(int id) {
+        return assignment[id];
     }
     /**
-     * Calcola il nuovo centroide per ciascun cluster in C.
-     * @param data dataset
+     * Assegna la transazione id al cluster di indice cluster.
+     * @param id indice della tupla
+     * @param cluster indice del cluster
+     * @return true se la transazione ha cambiato cluster
      */
-    protected void updateCentroids(Data data) {
-        for (Cluster c : C) {
-            c.computeCentroid(data);
+    protected boolean assign(int id, int cluster) {
+        int oldCluster = assignment[id];
+        if (oldCluster == cluster)
+            return false;
+        if (oldCluster >= 0)
+            counts[oldCluster]--;
+        counts[cluster]++;
+        assignment[id] = cluster;
+        return true;
+    }
+    /**
+     * Restituisce, per ciascun cluster in C, gli indici di riga delle transazioni
+     * che vi appartengono, in ordine crescente.
+     * Gli insiemi sono ricavati con un solo passaggio sull'array di assegnamento.
+     * @return indici di riga per ciascun cluster
+     */
+    protected int[][] members() {
+        int[][] members = new int[C.length][];
+        for (int c = 0; c < C.length; c++)
+            members[c] = new int[counts[c]];
+        int[] next = new int[C.length];
+        for (int id = 0; id < assignment.length; id++) {
+            int c = assignment[id];
+            if (c >= 0)
+                members[c][next[c]++] = id;
         }
+        return members;
+    }
+    /**
+     * Restituisce l'array di assegnamento delle transazioni ai cluster.
+     * @return assignment
+     */
+    int[] getAssignment() {
+        return assignment;
+    }
+    /**
+     * Restituisce il numero di transazioni assegnate a ciascun cluster.
+     * @return counts
+     */
+    int[] getCounts() {
+        return counts;
     }
     /**
      * Restituisce una stringa fatta da ciascun centroide dell'insieme dei cluster.
      * @return s
      */
     public String toString() {
-        String s = "";
+        StringBuilder s = new StringBuilder();
         for (int i = 0; i < C.length; i++) {
-            s += i + ":" + C[i].toString() + "\n";
+            s.append(i).append(':').append(C[i]).append('\n');
         }
-        return s;
+        return s.toString();
     }
     /**
      * Restituisce una stringa che descriva lo stato di ciascun cluster in C.
@@ -118,12 +224,13 @@ public class ClusterSet implements Serializable {
      * @return str
      */
     public String toString(Data data) {
-        String str = "";
+        StringBuilder str = new StringBuilder();
+        int[][] members = members();
         for (int i = 0; i < C.length; i++) {
             if (C[i] != null) {
-                str += i + ":" + C[i].toString(data) + "\n";
+                str.append(i).append(':').append(C[i].toString(data, members[i])).append('\n');
             }
         }
-        return str;
+        return str.toString();
     }
 }
@@ -0,0 +1,139 @@
+package mining;
+
+import java.io.Serializable;
+
+/**
+ * Classe ClusteringResult che descrive in forma strutturata l'esito di
+ * un'esecuzione dell'algoritmo k-means, in alternativa alla stringa di
+ * ClusterSet.toString(Data).
+ * Contiene i centroidi come array tipizzati, il numero di transazioni e la
+ * distanza media dal centroide di ciascun cluster, ma non le transazioni, che
+ * si ottengono a pagine con KmeansMiner.getMembers.
+ */
+public class ClusteringResult implements Serializable {
+    /**
+     * Nomi degli attributi, nell'ordine delle colonne.
+     */
+    private final String[] attributes;
+    /**
+     * Valori continui dei centroidi: il valore j del centroide c è in
+     * centroids[c][j], NaN se l'attributo j è discreto.
+     */
+    private final double[][] centroids;
+    /**
+     * Valori discreti dei centroidi: il valore j del centroide c è in
+     * labels[c][j], null se l'attributo j è continuo.
+     */
+    private final String[][] labels;
+    /**
+     * Numero di transazioni di ciascun cluster.
+     */
+    private final int[] sizes;
+    /**
+     * Distanza media delle transazioni di ciascun cluster dal suo centroide, 0 per un cluster vuoto.
+     */
+    private final double[] averageDistances;
+    /**
+     * Numero di iterazioni dell'esecuzione.
+     */
+    private final int iterations;
+    /**
+     * Criterio che ha fermato l'esecuzione.
+     */
+    private final String stopReason;
+
+    /**
+     * Costruttore di classe.
+     * @param attributes nomi degli attributi
+     * @param centroids valori continui dei centroidi
+     * @param labels valori discreti dei centroidi
+     * @param sizes numero di transazioni di ciascun cluster
+     * @param averageDistances distanza media di ciascun cluster
+     * @param iterations numero di iterazioni
+     * @param stopReason criterio di arresto
+     */
+    ClusteringResult(String[] attributes, double[][] centroids, String[][] labels, int[] sizes,
+            double[] averageDistances, int iterations, String stopReason) {
+        this.attributes = attributes;
+        this.centroids = centroids;
+        this.labels = labels;
+        this.sizes = sizes;
+        this.averageDistances = averageDistances;
+        this.iterations = iterations;
+        this.stopReason = stopReason;
+    }
+
+    /**
+     * Restituisce il numero di cluster.
+     * @return numero di cluster
+     */
+    public int getNumberOfClusters() {
+        return sizes.length;
+    }
+
+    /**
+     * Restituisce i nomi degli attributi.
+     * @return attributes
+     */
+    public String[] getAttributes() {
+        return attributes;
+    }
+
+    /**
+     * Restituisce il valore dell'attributo j del centroide c.
+     * @param c indice del cluster
+     * @param j indice dell'attributo
+     * @return un Double per gli attributi continui, una String per quelli discreti
+     */
+    public Object getCentroidValue(int c, int j) {
+        return labels[c][j] != null ? labels[c][j] : (Object) centroids[c][j];
+    }
+
+    /**
+     * Restituisce i valori continui dei centroidi.
+     * @return centroids
+     */
+    public double[][] getCentroids() {
+        return centroids;
+    }
+
+    /**
+     * Restituisce i valori discreti dei centroidi.
+     * @return labels
+     */
+    public String[][] getLabels() {
+        return labels;
+    }
+
+    /**
+     * Restituisce il numero di transazioni di ciascun cluster.
+     * @return sizes
+     */
+    public int[] getSizes() {
+        return sizes;
+    }
+
+    /**
+     * Restituisce la distanza media delle transazioni di ciascun cluster dal suo centroide.
+     * @return averageDistances
+     */
+    public double[] getAverageDistances() {
+        return averageDistances;
+    }
+
+    /**
+     * Restituisce il numero di iterazioni dell'esecuzione.
+     * @return iterations
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * Restituisce il criterio che ha fermato l'esecuzione.
+     * @return stopReason
+     */
+    public String getStopReason() {
+        return stopReason;
+    }
+}
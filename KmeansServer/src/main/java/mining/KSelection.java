@@ -0,0 +1,253 @@
+package mining;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import data.Data;
+import data.OutOfRangeSampleSize;
+
+/**
+ * Classe KSelection che esegue l'algoritmo k-means per ogni k di un intervallo
+ * e suggerisce il numero di cluster.
+ * L'intervallo è diviso in catene di valori consecutivi, eseguite in parallelo
+ * sul pool condiviso e sullo stesso dataset; all'interno di una catena ogni
+ * esecuzione parte dai centroidi della precedente, a cui aggiunge un centroide
+ * scelto con k-means++.
+ * Per ogni k sono calcolati la distanza totale delle transazioni dai propri
+ * centroidi e il coefficiente di silhouette su un campione di transazioni,
+ * lo stesso per tutti i k; il k suggerito è quello con la silhouette maggiore.
+ */
+public class KSelection {
+    /**
+     * Numero massimo di transazioni campionate per la silhouette.
+     */
+    private static final int SILHOUETTE_SAMPLE = 1000;
+    /**
+     * Primo valore di k.
+     */
+    private final int kMin;
+    /**
+     * Numero di iterazioni per ciascun k, indicizzato da k - kMin.
+     */
+    private final int[] iterations;
+    /**
+     * Motivo di terminazione per ciascun k.
+     */
+    private final StopReason[] stopReasons;
+    /**
+     * Distanza totale delle transazioni dai propri centroidi per ciascun k.
+     */
+    private final double[] cost;
+    /**
+     * Silhouette media del campione per ciascun k, NaN per k = 1.
+     */
+    private final double[] silhouette;
+
+    /**
+     * Costruttore della classe KSelection.
+     * @param kMin primo valore di k
+     * @param kMax ultimo valore di k
+     */
+    private KSelection(int kMin, int kMax) {
+        this.kMin = kMin;
+        int m = kMax - kMin + 1;
+        iterations = new int[m];
+        stopReasons = new StopReason[m];
+        cost = new double[m];
+        silhouette = new double[m];
+    }
+
+    /**
+     * Esegue l'algoritmo k-means su data per ogni k tra kMin e kMax.
+     * Le esecuzioni usano i parametri di config, eccetto le esecuzioni multiple.
+     * @param data dataset, letto in modo concorrente dalle esecuzioni
+     * @param kMin primo valore di k, almeno 1
+     * @param kMax ultimo valore di k, non minore di kMin
+     * @param config parametri di esecuzione
+     * @return risultati per ciascun k
+     * @throws OutOfRangeSampleSize se l'intervallo non è valido per il dataset
+     */
+    public static KSelection sweep(Data data, int kMin, int kMax, KmeansConfig config) throws OutOfRangeSampleSize {
+        int n = data.getNumberOfExamples();
+        if (kMin < 1 || kMax < kMin || kMax > n)
+            throw new OutOfRangeSampleSize("Inserire un intervallo di cluster compreso tra 1 e " + n + "");
+        KSelection result = new KSelection(kMin, kMax);
+        KmeansConfig single = config.copy();
+        single.setRestarts(1);
+        Random rand = new Random(System.currentTimeMillis());
+        int[] sample = sample(n, rand);
+        double[] sampleDistance = sampleDistances(data, sample);
+
+        int m = kMax - kMin + 1;
+        int chains = Math.min(config.getParallelism(), m);
+        Thread owner = Thread.currentThread();
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (int chain = 0; chain < chains; chain++) {
+            int first = kMin + chain * m / chains;
+            int last = kMin + (chain + 1) * m / chains - 1;
+            long seed = rand.nextLong();
+            tasks.add(() -> {
+                Random chainRand = new Random(seed);
+                ClusterSet previous = null;
+                for (int k = first; k <= last; k++) {
+                    KmeansMiner miner = KmeansMiner.newMiner(k, single);
+                    miner.setOwner(owner);
+                    int i = k - kMin;
+                    result.iterations[i] = miner.run(data, chainRand, previous);
+                    result.stopReasons[i] = miner.getStopReason();
+                    previous = miner.getC();
+                    AssignmentKernel kernel = new AssignmentKernel(data, k);
+                    kernel.loadCentroids(previous);
+                    result.cost[i] = kernel.totalDistance(previous.getAssignment());
+                    result.silhouette[i] = silhouette(previous.getAssignment(), k, sample, sampleDistance);
+                }
+                return null;
+            });
+        }
+        try {
+            for (Future<Void> f : KmeansMiner.getPool().invokeAll(tasks))
+                f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Esecuzione annullata");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof OutOfRangeSampleSize)
+                throw (OutOfRangeSampleSize) e.getCause();
+            if (e.getCause() instanceof CancellationException)
+                throw (CancellationException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+        return result;
+    }
+
+    /**
+     * Sceglie senza ripetizioni al più SILHOUETTE_SAMPLE transazioni.
+     * @param n numero di transazioni
+     * @param rand generatore di numeri casuali
+     * @return indici di riga campionati, in ordine crescente
+     */
+    private static int[] sample(int n, Random rand) {
+        if (n <= SILHOUETTE_SAMPLE) {
+            int[] all = new int[n];
+            for (int i = 0; i < n; i++)
+                all[i] = i;
+            return all;
+        }
+        // algoritmo di Floyd
+        HashSet<Integer> chosen = new HashSet<Integer>();
+        for (int j = n - SILHOUETTE_SAMPLE; j < n; j++) {
+            int t = rand.nextInt(j + 1);
+            if (!chosen.add(t))
+                chosen.add(j);
+        }
+        int[] rows = new int[SILHOUETTE_SAMPLE];
+        int i = 0;
+        for (int row : chosen)
+            rows[i++] = row;
+        Arrays.sort(rows);
+        return rows;
+    }
+
+    /**
+     * Calcola le distanze tra le transazioni del campione.
+     * @param data dataset
+     * @param sample indici di riga campionati
+     * @return matrice delle distanze, memorizzata per righe
+     */
+    private static double[] sampleDistances(Data data, int[] sample) {
+        AssignmentKernel kernel = new AssignmentKernel(data, 0);
+        int s = sample.length;
+        double[] distance = new double[s * s];
+        for (int a = 0; a < s; a++) {
+            for (int b = a + 1; b < s; b++) {
+                double d = kernel.rowDistance(sample[a], sample[b]);
+                distance[a * s + b] = d;
+                distance[b * s + a] = d;
+            }
+        }
+        return distance;
+    }
+
+    /**
+     * Calcola la silhouette media delle transazioni del campione.
+     * Per una transazione, a è la distanza media dalle altre transazioni
+     * campionate del proprio cluster e b la minima, sugli altri cluster, della
+     * distanza media dalle transazioni campionate del cluster; la silhouette è
+     * (b - a) / max(a, b), e vale 0 se la transazione è l'unica campionata del
+     * proprio cluster.
+     * @param assignment assegnamento delle transazioni ai cluster
+     * @param k numero di cluster
+     * @param sample indici di riga campionati
+     * @param distance distanze tra le transazioni del campione
+     * @return silhouette media, NaN se k = 1
+     */
+    private static double silhouette(int[] assignment, int k, int[] sample, double[] distance) {
+        if (k < 2)
+            return Double.NaN;
+        int s = sample.length;
+        int[] size = new int[k];
+        for (int row : sample)
+            size[assignment[row]]++;
+        double[] sum = new double[k];
+        double total = 0;
+        for (int a = 0; a < s; a++) {
+            Arrays.fill(sum, 0);
+            for (int b = 0; b < s; b++)
+                sum[assignment[sample[b]]] += distance[a * s + b];
+            int own = assignment[sample[a]];
+            if (size[own] < 2)
+                continue;
+            double inner = sum[own] / (size[own] - 1);
+            double outer = Double.POSITIVE_INFINITY;
+            for (int c = 0; c < k; c++) {
+                if (c != own && size[c] > 0)
+                    outer = Math.min(outer, sum[c] / size[c]);
+            }
+            if (outer == Double.POSITIVE_INFINITY)
+                continue;
+            double max = Math.max(inner, outer);
+            if (max > 0)
+                total += (outer - inner) / max;
+        }
+        return total / s;
+    }
+
+    /**
+     * Restituisce il k con la silhouette maggiore; se l'intervallo contiene solo
+     * k = 1 restituisce 1.
+     * @return k suggerito
+     */
+    public int getRecommendedK() {
+        int best = 0;
+        for (int i = 1; i < silhouette.length; i++) {
+            if (Double.isNaN(silhouette[best]) || silhouette[i] > silhouette[best])
+                best = i;
+        }
+        return kMin + best;
+    }
+
+    /**
+     * Restituisce una tabella con i risultati per ciascun k e il k suggerito.
+     * @return stringa con i risultati
+     */
+    @Override
+    public String toString() {
+        StringBuilder str = new StringBuilder();
+        str.append("k\titerazioni\tdistanza totale\tsilhouette\tterminazione\n");
+        for (int i = 0; i < cost.length; i++) {
+            str.append(kMin + i).append('\t').append(iterations[i]).append('\t')
+                    .append(String.format("%.4f", cost[i])).append('\t')
+                    .append(Double.isNaN(silhouette[i]) ? "-" : String.format("%.4f", silhouette[i])).append('\t')
+                    .append(stopReasons[i]).append('\n');
+        }
+        str.append("k suggerito: ").append(getRecommendedK()).append('\n');
+        return str.toString();
+    }
+}
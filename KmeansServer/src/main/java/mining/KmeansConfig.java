@@ -0,0 +1,564 @@
+package mining;
+
+import java.io.Serializable;
+
+/**
+ * Classe KmeansConfig che raccoglie i parametri di esecuzione dell'algoritmo k-means.
+ * I valori predefiniti sono quelli del server; ciascuna sessione client può
+ * modificarli per le proprie richieste.
+ * Implementa l'interfaccia Serializable.
+ */
+public class KmeansConfig implements Serializable {
+    /**
+     * Modalità di esecuzione dell'algoritmo.
+     */
+    public enum Mode {
+        /**
+         * Algoritmo k-means completo: ogni iterazione elabora tutte le transazioni.
+         */
+        LLOYD,
+        /**
+         * Algoritmo k-means a mini-batch: ogni iterazione elabora un campione di transazioni.
+         */
+        MINI_BATCH
+    }
+    /**
+     * Strategia di scelta dei centroidi iniziali.
+     */
+    public enum Seeding {
+        /**
+         * Transazioni distinte scelte a caso in modo uniforme.
+         */
+        RANDOM,
+        /**
+         * k-means++: ogni centroide è scelto con probabilità proporzionale al
+         * quadrato della distanza dai centroidi già scelti.
+         */
+        KMEANS_PLUS_PLUS,
+        /**
+         * k-means||: variante parallela di k-means++ per dataset di grandi dimensioni.
+         */
+        KMEANS_PARALLEL
+    }
+    /**
+     * Grado di parallelismo predefinito del server.
+     */
+    private static int defaultParallelism = Runtime.getRuntime().availableProcessors();
+    /**
+     * Numero di thread usati da una esecuzione dell'algoritmo.
+     */
+    private int parallelism = defaultParallelism;
+    /**
+     * Vale true se l'assegnamento usa i limiti della disuguaglianza triangolare.
+     */
+    private boolean accelerated = false;
+    /**
+     * Modalità di esecuzione.
+     */
+    private Mode mode = Mode.LLOYD;
+    /**
+     * Numero di transazioni campionate a ogni iterazione in modalità MINI_BATCH.
+     */
+    private int batchSize = 1024;
+    /**
+     * Spostamento massimo dei centroidi sotto il quale la modalità MINI_BATCH si ferma.
+     */
+    private double tolerance = 1e-3;
+    /**
+     * Strategia di scelta dei centroidi iniziali.
+     */
+    private Seeding seeding = Seeding.KMEANS_PLUS_PLUS;
+    /**
+     * Numero massimo di iterazioni (di batch in modalità MINI_BATCH).
+     */
+    private int maxIterations = 300;
+    /**
+     * Frazione di transazioni spostate sotto la quale la modalità LLOYD si ferma;
+     * con 0 si ferma solo quando nessuna transazione cambia cluster.
+     */
+    private double minMovedFraction = 0;
+    /**
+     * Spostamento massimo dei centroidi sotto il quale la modalità LLOYD si ferma;
+     * con 0 il criterio non viene applicato.
+     */
+    private double centroidEpsilon = 0;
+    /**
+     * Vale true se la modalità LLOYD si ferma quando l'assegnamento si ripete.
+     */
+    private boolean detectCycles = true;
+    /**
+     * Numero di esecuzioni indipendenti dell'algoritmo, di cui si conserva la migliore.
+     */
+    private int restarts = 1;
+    /**
+     * Vale true se il salvataggio del modello include l'assegnamento delle transazioni.
+     */
+    private boolean saveAssignments = true;
+    /**
+     * Numero di righe inviate insieme al database nella scrittura degli assegnamenti.
+     */
+    private int insertBatchSize = 1000;
+    /**
+     * Numero di righe dopo cui viene confermata la scrittura degli assegnamenti.
+     */
+    private int commitInterval = 10000;
+    /**
+     * Vale true se l'esito dell'operazione 2 è inviato al client come
+     * ClusteringResult anziché come stringa.
+     */
+    private boolean structuredResult = false;
+    /**
+     * Vale true se durante l'operazione 2 il client riceve l'avanzamento delle iterazioni.
+     */
+    private boolean progress = false;
+
+    /**
+     * Costruttore della classe KmeansConfig.
+     * Inizializza i parametri con i valori predefiniti del server.
+     */
+    public KmeansConfig() {
+    }
+
+    /**
+     * Restituisce il grado di parallelismo predefinito del server.
+     * @return grado di parallelismo predefinito
+     */
+    public static int getDefaultParallelism() {
+        return defaultParallelism;
+    }
+
+    /**
+     * Imposta il grado di parallelismo predefinito del server.
+     * Va invocato all'avvio, prima di eseguire l'algoritmo.
+     * @param parallelism grado di parallelismo, almeno 1
+     */
+    public static void setDefaultParallelism(int parallelism) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("Il grado di parallelismo deve essere maggiore di 0");
+        defaultParallelism = parallelism;
+    }
+
+    /**
+     * Restituisce il numero di thread usati da una esecuzione dell'algoritmo.
+     * @return grado di parallelismo
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Imposta il numero di thread usati da una esecuzione dell'algoritmo.
+     * Con 1 l'algoritmo viene eseguito interamente dal thread chiamante.
+     * @param parallelism grado di parallelismo, almeno 1
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("Il grado di parallelismo deve essere maggiore di 0");
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Restituisce true se l'assegnamento usa i limiti della disuguaglianza triangolare.
+     * @return accelerated
+     */
+    public boolean isAccelerated() {
+        return accelerated;
+    }
+
+    /**
+     * Attiva o disattiva l'assegnamento accelerato.
+     * Il risultato è lo stesso, ma con molti cluster la maggior parte delle
+     * distanze non viene calcolata; richiede due double per transazione.
+     * @param accelerated true per attivare l'assegnamento accelerato
+     */
+    public void setAccelerated(boolean accelerated) {
+        this.accelerated = accelerated;
+    }
+
+    /**
+     * Restituisce la modalità di esecuzione.
+     * @return mode
+     */
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Imposta la modalità di esecuzione.
+     * @param mode modalità di esecuzione
+     */
+    public void setMode(Mode mode) {
+        this.mode = mode;
+    }
+
+    /**
+     * Restituisce il numero di transazioni campionate a ogni iterazione in modalità MINI_BATCH.
+     * @return batchSize
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Imposta il numero di transazioni campionate a ogni iterazione in modalità MINI_BATCH.
+     * @param batchSize dimensione del campione, almeno 1
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1)
+            throw new IllegalArgumentException("La dimensione del batch deve essere maggiore di 0");
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Restituisce lo spostamento massimo dei centroidi sotto il quale la modalità MINI_BATCH si ferma.
+     * @return tolerance
+     */
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    /**
+     * Imposta lo spostamento massimo dei centroidi sotto il quale la modalità MINI_BATCH si ferma.
+     * @param tolerance tolleranza, non negativa
+     */
+    public void setTolerance(double tolerance) {
+        if (!(tolerance >= 0))
+            throw new IllegalArgumentException("La tolleranza non può essere negativa");
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * Restituisce la strategia di scelta dei centroidi iniziali.
+     * @return seeding
+     */
+    public Seeding getSeeding() {
+        return seeding;
+    }
+
+    /**
+     * Imposta la strategia di scelta dei centroidi iniziali.
+     * @param seeding strategia di scelta
+     */
+    public void setSeeding(Seeding seeding) {
+        this.seeding = seeding;
+    }
+
+    /**
+     * Restituisce il numero massimo di iterazioni.
+     * @return maxIterations
+     */
+    public int getMaxIterations() {
+        return maxIterations;
+    }
+
+    /**
+     * Imposta il numero massimo di iterazioni (di batch in modalità MINI_BATCH).
+     * @param maxIterations numero massimo di iterazioni, almeno 1
+     */
+    public void setMaxIterations(int maxIterations) {
+        if (maxIterations < 1)
+            throw new IllegalArgumentException("Il numero massimo di iterazioni deve essere maggiore di 0");
+        this.maxIterations = maxIterations;
+    }
+
+    /**
+     * Restituisce la frazione di transazioni spostate sotto la quale la modalità LLOYD si ferma.
+     * @return minMovedFraction
+     */
+    public double getMinMovedFraction() {
+        return minMovedFraction;
+    }
+
+    /**
+     * Imposta la frazione di transazioni spostate sotto la quale la modalità LLOYD si ferma.
+     * @param minMovedFraction frazione tra 0 e 1
+     */
+    public void setMinMovedFraction(double minMovedFraction) {
+        if (!(minMovedFraction >= 0 && minMovedFraction <= 1))
+            throw new IllegalArgumentException("La frazione di transazioni spostate deve essere compresa tra 0 e 1");
+        this.minMovedFraction = minMovedFraction;
+    }
+
+    /**
+     * Restituisce lo spostamento dei centroidi sotto il quale la modalità LLOYD si ferma.
+     * @return centroidEpsilon
+     */
+    public double getCentroidEpsilon() {
+        return centroidEpsilon;
+    }
+
+    /**
+     * Imposta lo spostamento dei centroidi sotto il quale la modalità LLOYD si ferma.
+     * Lo spostamento è misurato con la distanza usata per l'assegnamento.
+     * @param centroidEpsilon tolleranza, non negativa; 0 disattiva il criterio
+     */
+    public void setCentroidEpsilon(double centroidEpsilon) {
+        if (!(centroidEpsilon >= 0))
+            throw new IllegalArgumentException("La tolleranza non può essere negativa");
+        this.centroidEpsilon = centroidEpsilon;
+    }
+
+    /**
+     * Restituisce true se la modalità LLOYD si ferma quando l'assegnamento si ripete.
+     * @return detectCycles
+     */
+    public boolean isDetectCycles() {
+        return detectCycles;
+    }
+
+    /**
+     * Attiva o disattiva il riconoscimento degli assegnamenti ciclici.
+     * @param detectCycles true per fermarsi quando l'assegnamento si ripete
+     */
+    public void setDetectCycles(boolean detectCycles) {
+        this.detectCycles = detectCycles;
+    }
+
+    /**
+     * Restituisce il numero di esecuzioni indipendenti dell'algoritmo.
+     * @return restarts
+     */
+    public int getRestarts() {
+        return restarts;
+    }
+
+    /**
+     * Imposta il numero di esecuzioni indipendenti dell'algoritmo, eseguite in
+     * parallelo; si conserva quella con la minore distanza totale.
+     * @param restarts numero di esecuzioni, almeno 1
+     */
+    public void setRestarts(int restarts) {
+        if (restarts < 1)
+            throw new IllegalArgumentException("Il numero di esecuzioni deve essere maggiore di 0");
+        this.restarts = restarts;
+    }
+
+    /**
+     * Restituisce true se il salvataggio del modello include l'assegnamento delle transazioni.
+     * @return saveAssignments
+     */
+    public boolean isSaveAssignments() {
+        return saveAssignments;
+    }
+
+    /**
+     * Imposta se il salvataggio del modello include l'assegnamento delle
+     * transazioni; senza assegnamento il file contiene solo schema e centroidi.
+     * @param saveAssignments true per salvare l'assegnamento
+     */
+    public void setSaveAssignments(boolean saveAssignments) {
+        this.saveAssignments = saveAssignments;
+    }
+
+    /**
+     * Restituisce il numero di righe inviate insieme al database nella scrittura degli assegnamenti.
+     * @return insertBatchSize
+     */
+    public int getInsertBatchSize() {
+        return insertBatchSize;
+    }
+
+    /**
+     * Imposta il numero di righe inviate insieme al database nella scrittura degli assegnamenti.
+     * @param insertBatchSize numero di righe, almeno 1
+     */
+    public void setInsertBatchSize(int insertBatchSize) {
+        if (insertBatchSize < 1)
+            throw new IllegalArgumentException("La dimensione del batch di inserimento deve essere maggiore di 0");
+        this.insertBatchSize = insertBatchSize;
+    }
+
+    /**
+     * Restituisce il numero di righe dopo cui viene confermata la scrittura degli assegnamenti.
+     * @return commitInterval
+     */
+    public int getCommitInterval() {
+        return commitInterval;
+    }
+
+    /**
+     * Imposta il numero di righe dopo cui viene confermata la scrittura degli
+     * assegnamenti; un errore annulla solo le righe non ancora confermate.
+     * @param commitInterval numero di righe, almeno 1
+     */
+    public void setCommitInterval(int commitInterval) {
+        if (commitInterval < 1)
+            throw new IllegalArgumentException("L'intervallo di conferma deve essere maggiore di 0");
+        this.commitInterval = commitInterval;
+    }
+
+    /**
+     * Restituisce true se l'esito dell'operazione 2 è inviato come ClusteringResult.
+     * @return structuredResult
+     */
+    public boolean isStructuredResult() {
+        return structuredResult;
+    }
+
+    /**
+     * Imposta se l'esito dell'operazione 2 è inviato come ClusteringResult,
+     * con le transazioni dei cluster richieste a pagine, anziché come stringa.
+     * @param structuredResult true per l'esito strutturato
+     */
+    public void setStructuredResult(boolean structuredResult) {
+        this.structuredResult = structuredResult;
+    }
+
+    /**
+     * Restituisce true se durante l'operazione 2 il client riceve l'avanzamento delle iterazioni.
+     * @return progress
+     */
+    public boolean isProgress() {
+        return progress;
+    }
+
+    /**
+     * Imposta se durante l'operazione 2 il client riceve l'avanzamento delle
+     * iterazioni, come ProgressEvent inviati prima dell'esito.
+     * @param progress true per ricevere l'avanzamento
+     */
+    public void setProgress(boolean progress) {
+        this.progress = progress;
+    }
+
+    /**
+     * Imposta il parametro di nome name, ricevuto da un client.
+     * @param name nome del parametro
+     * @param value valore del parametro
+     * @throws IllegalArgumentException se il parametro non esiste o il valore non è valido
+     */
+    public void set(String name, Object value) {
+        try {
+            switch (name) {
+                case "parallelism":
+                    setParallelism(Integer.parseInt(String.valueOf(value)));
+                    break;
+                case "accelerated":
+                    setAccelerated(parseBoolean(value));
+                    break;
+                case "mode":
+                    setMode(parseMode(value));
+                    break;
+                case "batchSize":
+                    setBatchSize(Integer.parseInt(String.valueOf(value)));
+                    break;
+                case "tolerance":
+                    setTolerance(Double.parseDouble(String.valueOf(value)));
+                    break;
+                case "seeding":
+                    setSeeding(parseSeeding(value));
+                    break;
+                case "maxIterations":
+                    setMaxIterations(Integer.parseInt(String.valueOf(value)));
+                    break;
+                case "minMovedFraction":
+                    setMinMovedFraction(Double.parseDouble(String.valueOf(value)));
+                    break;
+                case "centroidEpsilon":
+                    setCentroidEpsilon(Double.parseDouble(String.valueOf(value)));
+                    break;
+                case "detectCycles":
+                    setDetectCycles(parseBoolean(value));
+                    break;
+                case "restarts":
+                    setRestarts(Integer.parseInt(String.valueOf(value)));
+                    break;
+                case "saveAssignments":
+                    setSaveAssignments(parseBoolean(value));
+                    break;
+                case "insertBatchSize":
+                    setInsertBatchSize(Integer.parseInt(String.valueOf(value)));
+                    break;
+                case "commitInterval":
+                    setCommitInterval(Integer.parseInt(String.valueOf(value)));
+                    break;
+                case "structuredResult":
+                    setStructuredResult(parseBoolean(value));
+                    break;
+                case "progress":
+                    setProgress(parseBoolean(value));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Parametro sconosciuto: " + name);
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Valore non valido per " + name + ": " + value);
+        }
+    }
+
+    /**
+     * Converte in booleano il valore di un parametro.
+     * @param value valore ricevuto dal client
+     * @return valore booleano
+     * @throws IllegalArgumentException se il valore non è true o false
+     */
+    private static boolean parseBoolean(Object value) {
+        String s = String.valueOf(value);
+        if (s.equalsIgnoreCase("true"))
+            return true;
+        if (s.equalsIgnoreCase("false"))
+            return false;
+        throw new IllegalArgumentException("Valore booleano non valido: " + value);
+    }
+
+    /**
+     * Converte in modalità di esecuzione il valore di un parametro.
+     * @param value valore ricevuto dal client: lloyd o minibatch
+     * @return modalità di esecuzione
+     * @throws IllegalArgumentException se la modalità non esiste
+     */
+    private static Mode parseMode(Object value) {
+        switch (String.valueOf(value).toLowerCase()) {
+            case "lloyd":
+                return Mode.LLOYD;
+            case "minibatch":
+                return Mode.MINI_BATCH;
+            default:
+                throw new IllegalArgumentException("Modalità sconosciuta: " + value);
+        }
+    }
+
+    /**
+     * Converte in strategia di scelta dei centroidi il valore di un parametro.
+     * @param value valore ricevuto dal client: random, kmeans++ o kmeans||
+     * @return strategia di scelta
+     * @throws IllegalArgumentException se la strategia non esiste
+     */
+    private static Seeding parseSeeding(Object value) {
+        switch (String.valueOf(value).toLowerCase()) {
+            case "random":
+                return Seeding.RANDOM;
+            case "kmeans++":
+                return Seeding.KMEANS_PLUS_PLUS;
+            case "kmeans||":
+                return Seeding.KMEANS_PARALLEL;
+            default:
+                throw new IllegalArgumentException("Strategia di inizializzazione sconosciuta: " + value);
+        }
+    }
+
+    /**
+     * Restituisce una copia dei parametri.
+     * @return copia della configurazione
+     */
+    public KmeansConfig copy() {
+        KmeansConfig copy = new KmeansConfig();
+        copy.parallelism = parallelism;
+        copy.accelerated = accelerated;
+        copy.mode = mode;
+        copy.batchSize = batchSize;
+        copy.tolerance = tolerance;
+        copy.seeding = seeding;
+        copy.maxIterations = maxIterations;
+        copy.minMovedFraction = minMovedFraction;
+        copy.centroidEpsilon = centroidEpsilon;
+        copy.detectCycles = detectCycles;
+        copy.restarts = restarts;
+        copy.saveAssignments = saveAssignments;
+        copy.insertBatchSize = insertBatchSize;
+        copy.commitInterval = commitInterval;
+        copy.structuredResult = structuredResult;
+        copy.progress = progress;
+        return copy;
+    }
+}
@@ -1,12 +1,17 @@
 package mining;
 
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import data.Data;
 import data.OutOfRangeSampleSize;
@@ -20,7 +25,46 @@ public class KmeansMiner implements Serializable {
      * ClusterSet C.
      * Contiene i cluster ottenuti dall'algoritmo k-means.
      */
-    private final ClusterSet C;
+    private ClusterSet C;
+    /**
+     * Parametri di esecuzione dell'algoritmo.
+     */
+    private final KmeansConfig config;
+    /**
+     * Motivo per cui l'ultima esecuzione di kmeans ha terminato le iterazioni.
+     */
+    private StopReason stopReason;
+    /**
+     * Numero di iterazioni dell'ultima esecuzione, usato dalle esecuzioni multiple.
+     */
+    private transient int iterations;
+    /**
+     * Indici di riga delle transazioni di ciascun cluster di C, calcolati al
+     * primo uso di getMembers e azzerati quando C cambia.
+     */
+    private transient volatile int[][] members;
+    /**
+     * Destinatario dell'avanzamento delle iterazioni, null se non richiesto.
+     */
+    private transient ProgressListener listener;
+    /**
+     * Indice dell'esecuzione indipendente, riportato negli eventi di avanzamento.
+     */
+    private transient int restart;
+    /**
+     * Thread che ha avviato l'esecuzione: la sua interruzione annulla anche le
+     * esecuzioni svolte per suo conto sui thread del pool.
+     */
+    private transient Thread owner;
+    /**
+     * Numero massimo di transazioni restituite da una pagina di getMembers.
+     */
+    public static final int MAX_PAGE_SIZE = 10000;
+    /**
+     * Pool di thread condiviso dalle esecuzioni parallele, creato al primo uso
+     * con il grado di parallelismo predefinito del server.
+     */
+    private static ForkJoinPool pool;
     /**
      * Costruttore della classe KMeansMiner.
      * Inizializza C con k cluster.
@@ -28,24 +72,35 @@ public class KmeansMiner implements Serializable {
      * @throws OutOfRangeSampleSize eccezione per dimensione campione fuori range
      */
     public KmeansMiner(int k) throws OutOfRangeSampleSize {
+        this(k, new KmeansConfig());
+    }
+    /**
+     * Costruttore della classe KMeansMiner.
+     * Inizializza C con k cluster e usa i parametri di esecuzione config.
+     * @param k numero di cluster.
+     * @param config parametri di esecuzione.
+     * @throws OutOfRangeSampleSize eccezione per dimensione campione fuori range
+     */
+    public KmeansMiner(int k, KmeansConfig config) throws OutOfRangeSampleSize {
         this.C = new ClusterSet(k);
+        this.config = config.copy();
     }
     /**
      * Costruttore della classe KMeansMiner.
      * Apre il file fileName e ne legge il contenuto e lo memorizza in C.
+     * Il file deve essere nel formato binario di ModelCodec: i modelli salvati
+     * con la serializzazione Java dalle versioni precedenti del server non sono
+     * supportati e vanno appresi e salvati di nuovo.
      * @param fileName nome del file.
-     * @throws IOException eccezione per errore di I/O
-     * @throws ClassNotFoundException eccezione per errore di cast
+     * @throws IOException eccezione per errore di I/O o formato non supportato
+     * @throws ClassNotFoundException non più sollevata, mantenuta per i chiamanti esistenti
      */
     public KmeansMiner(String fileName) throws IOException, ClassNotFoundException {
+        this.config = new KmeansConfig();
         try {
-            ObjectInputStream in = new ObjectInputStream(new FileInputStream(fileName));
-            this.C = (ClusterSet) in.readObject();
-            in.close();
+            this.C = ModelCodec.read(fileName);
         } catch (IOException e) {
-            throw new IOException("[!] Errore di I/O");
-        } catch (ClassNotFoundException e) {
-            throw new ClassNotFoundException("[!] Errore di cast");
+            throw new IOException("[!] Errore di I/O: " + e.getMessage(), e);
         }
     }
     /**
@@ -56,53 +111,351 @@ public class KmeansMiner implements Serializable {
         return this.C;
     }
     /**
-     * Esegue l'algoritmo k-means eseguendo i passi dello pseudo-codice.
-     * 1.Scelta casuale di centroidi per k cluster.
+     * Assegna ciascuna transazione di rows al cluster di C con il centroide più
+     * vicino, come ClusterSet.nearestCluster, senza modificare C.
+     * Le transazioni sono codificate per colonne con gli attributi dei centroidi
+     * e assegnate a blocchi, in parallelo su config.getParallelism() thread.
+     * @param rows transazioni, con un valore per attributo nell'ordine delle colonne
+     * @param distances array, lungo quanto rows, in cui scrivere la distanza di
+     * ciascuna transazione dal centroide più vicino
+     * @return indice del cluster più vicino a ciascuna transazione
+     * @throws IllegalArgumentException se distances non è lungo quanto rows o una
+     * transazione non è compatibile con gli attributi del modello
+     */
+    public int[] predict(Object[][] rows, double[] distances) {
+        if (distances.length != rows.length)
+            throw new IllegalArgumentException("Le distanze devono essere tante quante le transazioni");
+        Data batch = Data.schemaOf(C.get(0).getCentroid()).encode(rows);
+        int n = batch.getNumberOfExamples();
+        int k = C.getNumberOfClusters();
+        AssignmentKernel kernel = new AssignmentKernel(batch, k);
+        kernel.loadCentroids(C);
+        int[] nearest = new int[n];
+        int blocks = Math.max(1, (n + LloydIteration.BLOCK_SIZE - 1) / LloydIteration.BLOCK_SIZE);
+        int lanes = Math.min(config.getParallelism(), blocks);
+        ParallelTasks.run(getPool(), lanes, blocks, b -> {
+            AssignmentKernel.Scratch scratch = kernel.newScratch();
+            int end = Math.min(n, (b + 1) * LloydIteration.BLOCK_SIZE);
+            for (int i = b * LloydIteration.BLOCK_SIZE; i < end; i++) {
+                nearest[i] = kernel.nearest(i, scratch);
+                distances[i] = scratch.distance;
+            }
+        });
+        return nearest;
+    }
+    /**
+     * Restituisce l'esito strutturato dell'ultima esecuzione su data: centroidi,
+     * numero di transazioni e distanza media dal centroide di ciascun cluster.
+     * Le distanze sono calcolate con un solo passaggio sull'assegnamento, senza
+     * costruire la rappresentazione testuale delle transazioni.
+     * @param data insieme di dati su cui è stato eseguito l'algoritmo
+     * @param numberOfIterations numero di iterazioni dell'esecuzione
+     * @return esito dell'esecuzione
+     * @throws IllegalArgumentException se C non contiene l'assegnamento delle transazioni di data
+     */
+    public ClusteringResult getResult(Data data, int numberOfIterations) {
+        int[] assignment = checkAssignment(data);
+        int k = C.getNumberOfClusters();
+        int m = data.getNumberOfAttributes();
+        String[] attributes = new String[m];
+        for (int j = 0; j < m; j++)
+            attributes[j] = data.getAttributeName(j);
+        double[][] centroids = new double[k][m];
+        String[][] labels = new String[k][m];
+        for (int c = 0; c < k; c++) {
+            Cluster cluster = C.get(c);
+            double[] values = cluster.getValues();
+            for (int j = 0; j < m; j++) {
+                if (data.getContinuousColumn(j) != null) {
+                    centroids[c][j] = values[j];
+                } else {
+                    centroids[c][j] = Double.NaN;
+                    labels[c][j] = cluster.getCentroid().get(j).toString();
+                }
+            }
+        }
+        AssignmentKernel kernel = new AssignmentKernel(data, k);
+        kernel.loadCentroids(C);
+        AssignmentKernel.Scratch scratch = kernel.newScratch();
+        double[] averageDistances = new double[k];
+        for (int i = 0; i < assignment.length; i++) {
+            if (assignment[i] >= 0)
+                averageDistances[assignment[i]] += kernel.distance(i, scratch, assignment[i]);
+        }
+        int[] sizes = C.getCounts().clone();
+        for (int c = 0; c < k; c++) {
+            // un cluster vuoto ha distanza media 0
+            if (sizes[c] > 0)
+                averageDistances[c] /= sizes[c];
+        }
+        return new ClusteringResult(attributes, centroids, labels, sizes, averageDistances, numberOfIterations,
+                stopReason == null ? null : stopReason.toString());
+    }
+    /**
+     * Restituisce le transazioni del cluster di indice cluster dalla posizione
+     * offset, al più limit e comunque non più di MAX_PAGE_SIZE, con la distanza
+     * di ciascuna dal centroide.
+     * @param data insieme di dati su cui è stato eseguito l'algoritmo
+     * @param cluster indice del cluster
+     * @param offset posizione della prima transazione, a partire da 0
+     * @param limit numero massimo di transazioni
+     * @return pagina di transazioni
+     * @throws IllegalArgumentException se i parametri non sono validi o C non
+     * contiene l'assegnamento delle transazioni di data
+     */
+    public MemberPage getMembers(Data data, int cluster, int offset, int limit) {
+        checkAssignment(data);
+        int k = C.getNumberOfClusters();
+        if (cluster < 0 || cluster >= k)
+            throw new IllegalArgumentException("Indice di cluster non valido: " + cluster);
+        if (offset < 0 || limit < 1)
+            throw new IllegalArgumentException("Posizione e numero di transazioni non validi");
+        int[][] ids = members;
+        if (ids == null)
+            members = ids = C.members();
+        int total = ids[cluster].length;
+        int size = Math.max(0, Math.min(Math.min(limit, MAX_PAGE_SIZE), total - offset));
+        int m = data.getNumberOfAttributes();
+        AssignmentKernel kernel = new AssignmentKernel(data, k);
+        kernel.loadCentroids(C);
+        AssignmentKernel.Scratch scratch = kernel.newScratch();
+        Object[][] rows = new Object[size][m];
+        double[] distances = new double[size];
+        for (int r = 0; r < size; r++) {
+            int id = ids[cluster][offset + r];
+            for (int j = 0; j < m; j++)
+                rows[r][j] = data.getAttributeValue(id, j);
+            distances[r] = kernel.distance(id, scratch, cluster);
+        }
+        return new MemberPage(cluster, offset, total, rows, distances);
+    }
+    /**
+     * Restituisce l'assegnamento di C, verificando che riguardi le transazioni di data.
+     * @param data insieme di dati
+     * @return assegnamento delle transazioni ai cluster
+     * @throws IllegalArgumentException se C non contiene l'assegnamento delle transazioni di data
+     */
+    private int[] checkAssignment(Data data) {
+        int[] assignment = C.getAssignment();
+        if (assignment == null || assignment.length != data.getNumberOfExamples())
+            throw new IllegalArgumentException("Il modello non contiene l'assegnamento del dataset corrente");
+        return assignment;
+    }
+    /**
+     * Crea il KmeansMiner adatto alla modalità scelta in config.
+     * @param k numero di cluster.
+     * @param config parametri di esecuzione.
+     * @return KmeansMiner per la modalità di config
+     * @throws OutOfRangeSampleSize eccezione per dimensione campione fuori range
+     */
+    public static KmeansMiner newMiner(int k, KmeansConfig config) throws OutOfRangeSampleSize {
+        if (config.getMode() == KmeansConfig.Mode.MINI_BATCH)
+            return new MiniBatchKmeansMiner(k, config);
+        return new KmeansMiner(k, config);
+    }
+    /**
+     * Restituisce i parametri di esecuzione.
+     * @return config
+     */
+    KmeansConfig getConfig() {
+        return this.config;
+    }
+    /**
+     * Imposta il destinatario dell'avanzamento delle iterazioni delle esecuzioni
+     * successive di kmeans, null per non riceverlo.
+     * @param listener destinatario dell'avanzamento
+     */
+    public void setProgressListener(ProgressListener listener) {
+        this.listener = listener;
+    }
+    /**
+     * Notifica a listener, se impostato, l'avanzamento dell'iterazione appena terminata.
+     * @param iteration numero dell'iterazione
+     * @param moved numero di transazioni che hanno cambiato cluster, -1 se non disponibile
+     * @param shift spostamento massimo di un centroide
+     * @param cost costo corrente
+     * @param start istante di inizio dell'esecuzione, in nanosecondi
+     */
+    void reportProgress(int iteration, int moved, double shift, double cost, long start) {
+        if (listener != null)
+            listener.progress(new ProgressEvent(restart, iteration, moved, shift,
+                    (System.nanoTime() - start) / 1000000, cost));
+    }
+    /**
+     * Imposta il thread la cui interruzione annulla le esecuzioni successive.
+     * @param owner thread che ha avviato l'esecuzione
+     */
+    void setOwner(Thread owner) {
+        this.owner = owner;
+    }
+    /**
+     * Verifica, al termine di ogni iterazione, che l'esecuzione non sia stata annullata.
+     * @throws CancellationException se il thread che ha avviato l'esecuzione
+     * (o, se non impostato, il thread corrente) è stato interrotto
+     */
+    void checkCancelled() {
+        Thread thread = owner != null ? owner : Thread.currentThread();
+        if (thread.isInterrupted())
+            throw new CancellationException("Esecuzione annullata");
+    }
+    /**
+     * Restituisce il motivo per cui l'ultima esecuzione di kmeans ha terminato
+     * le iterazioni, null se l'algoritmo non è stato eseguito.
+     * @return stopReason
+     */
+    public StopReason getStopReason() {
+        return this.stopReason;
+    }
+    /**
+     * Imposta il motivo per cui l'esecuzione corrente ha terminato le iterazioni.
+     * @param stopReason motivo di terminazione
+     */
+    void setStopReason(StopReason stopReason) {
+        this.stopReason = stopReason;
+    }
+    /**
+     * Restituisce il pool di thread condiviso dalle esecuzioni parallele.
+     * @return pool di thread
+     */
+    static synchronized ForkJoinPool getPool() {
+        if (pool == null)
+            pool = new ForkJoinPool(KmeansConfig.getDefaultParallelism());
+        return pool;
+    }
+    /**
+     * Esegue l'algoritmo k-means.
+     * Con config.getRestarts() uguale a 1 esegue una sola volta l'algoritmo;
+     * altrimenti esegue config.getRestarts() esecuzioni indipendenti, in
+     * parallelo sul pool condiviso e con centroidi iniziali diversi, e conserva
+     * in C i cluster dell'esecuzione con la minore distanza totale delle
+     * transazioni dai propri centroidi. A parità di distanza prevale
+     * l'esecuzione con indice minore.
+     * Se il thread chiamante viene interrotto, tutte le esecuzioni terminano
+     * al termine dell'iterazione in corso.
+     * @param data insieme di dati, letto in modo concorrente dalle esecuzioni.
+     * @return numero di iterazioni dell'esecuzione conservata.
+     * @throws OutOfRangeSampleSize eccezione per dimensione campione fuori range
+     * @throws CancellationException se il thread chiamante è stato interrotto
+     */
+    public int kmeans(Data data) throws OutOfRangeSampleSize {
+        owner = Thread.currentThread();
+        long seed = System.currentTimeMillis();
+        int restarts = config.getRestarts();
+        if (restarts == 1)
+            return run(data, new Random(seed), null);
+
+        KmeansConfig single = config.copy();
+        single.setRestarts(1);
+        int k = C.getNumberOfClusters();
+        KmeansMiner[] miners = new KmeansMiner[restarts];
+        List<Callable<Double>> runs = new ArrayList<Callable<Double>>();
+        for (int r = 0; r < restarts; r++) {
+            KmeansMiner miner = newMiner(k, single);
+            Random rand = new Random(seed + r);
+            miner.listener = listener;
+            miner.restart = r;
+            miner.owner = owner;
+            miners[r] = miner;
+            runs.add(() -> {
+                miner.iterations = miner.run(data, rand, null);
+                AssignmentKernel kernel = new AssignmentKernel(data, k);
+                kernel.loadCentroids(miner.C);
+                return kernel.totalDistance(miner.C.getAssignment());
+            });
+        }
+        int best = -1;
+        double bestDistance = Double.POSITIVE_INFINITY;
+        try {
+            List<Future<Double>> results = getPool().invokeAll(runs);
+            for (int r = 0; r < restarts; r++) {
+                double distance = results.get(r).get();
+                if (best < 0 || distance < bestDistance) {
+                    best = r;
+                    bestDistance = distance;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Esecuzione annullata");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof OutOfRangeSampleSize)
+                throw (OutOfRangeSampleSize) e.getCause();
+            if (e.getCause() instanceof CancellationException)
+                throw (CancellationException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+        this.C = miners[best].C;
+        this.members = null;
+        this.stopReason = miners[best].stopReason;
+        return miners[best].iterations;
+    }
+    /**
+     * Esegue una volta l'algoritmo k-means eseguendo i passi dello pseudo-codice.
+     * 1.Scelta dei centroidi per k cluster, con la strategia config.getSeeding()
+     * oppure estendendo i centroidi di previous.
      * 2.Assegnazione di ciascuna riga della matrice in data al cluster avente
      * centroide più vicino all'esempio.
      * 3.Calcolo dei nuovi centroidi per ciascun cluster.
-     * 4.Ripete i passi 2 e 3. finché due iterazioni consecutive non restituiscano
-     * centroidi uguali.
+     * 4.Ripete i passi 2 e 3 finché vale uno dei criteri di arresto di config:
+     * nessuna transazione cambia cluster, la frazione di transazioni spostate è
+     * sotto config.getMinMovedFraction(), nessun centroide si sposta più di
+     * config.getCentroidEpsilon(), l'assegnamento si ripete (se
+     * config.isDetectCycles()) o si raggiunge config.getMaxIterations().
+     * Il criterio che ha fermato l'algoritmo è restituito da getStopReason().
+     * I passi 2 e 3 sono eseguiti su config.getParallelism() thread e, se
+     * config.isAccelerated(), evitano le distanze che non possono cambiare
+     * l'assegnamento.
      * @param data insieme di dati.
+     * @param rand generatore di numeri casuali dell'esecuzione.
+     * @param previous cluster da cui partire, copiandone i centroidi, oppure null.
      * @return numero di iterazioni.
      * @throws OutOfRangeSampleSize eccezione per dimensione campione fuori range
+     * @throws CancellationException se l'esecuzione è stata annullata, verificato
+     * al termine di ogni iterazione con checkCancelled
      */
-    public int kmeans(Data data) throws OutOfRangeSampleSize {
+    int run(Data data, Random rand, ClusterSet previous) throws OutOfRangeSampleSize {
         int numberOfIterations = 0;
+        long start = System.nanoTime();
+        members = null;
         // STEP 1
-        C.initializeCentroids(data);
-        boolean changedCluster;
+        C.initializeCentroids(data, config, rand, previous);
+        LloydIteration iteration = new LloydIteration(data, C, config, getPool());
+        HashSet<Long> visited = new HashSet<Long>();
+        visited.add(iteration.getAssignmentHash());
+        double minMoved = config.getMinMovedFraction() * data.getNumberOfExamples();
+        stopReason = null;
         do {
             numberOfIterations++;
-            // STEP 2
-            changedCluster = false;
-            for (int i = 0; i < data.getNumberOfExamples(); i++) {
-                Cluster nearestCluster = C.nearestCluster(data.getItemSet(i));
-                Cluster oldCluster = C.currentCluster(i);
-                boolean currentChange = nearestCluster.addData(i);
-                if (currentChange)
-                    changedCluster = true;
-                // rimuovo la tupla dal vecchio cluster
-                if (currentChange && oldCluster != null)
-                    // il nodo va rimosso dal suo vecchio cluster
-                    oldCluster.removeTuple(i);
-            }
-            // STEP 3
-            C.updateCentroids(data);
-        } while (changedCluster);
+            // STEP 2 e 3
+            int moved = iteration.iterate();
+            if (listener != null)
+                reportProgress(numberOfIterations, moved, iteration.getLastShift(), iteration.getLastCost(), start);
+            checkCancelled();
+            if (moved == 0)
+                stopReason = StopReason.CONVERGED;
+            else if (config.isDetectCycles() && !visited.add(iteration.getAssignmentHash()))
+                stopReason = StopReason.CYCLE;
+            else if (moved < minMoved)
+                stopReason = StopReason.MOVED_FRACTION;
+            else if (iteration.getLastShift() < config.getCentroidEpsilon())
+                stopReason = StopReason.CENTROID_SHIFT;
+            else if (numberOfIterations >= config.getMaxIterations())
+                stopReason = StopReason.MAX_ITERATIONS;
+        } while (stopReason == null);
         return numberOfIterations;
     }
     /**
-     * Apre il file identificato da fileName e vi scrive il contenuto di C.
+     * Apre il file identificato da fileName e vi scrive il contenuto di C nel
+     * formato binario di ModelCodec, con l'assegnamento delle transazioni se
+     * config.isSaveAssignments().
      * @param fileName nome del file.
      * @throws FileNotFoundException eccezione per file non trovato
      * @throws IOException eccezione per errore di I/O
      */
     public void salvaKmeansMiner(String fileName) throws FileNotFoundException,IOException {
         try {
-            ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(fileName));
-            out.writeObject(this.C);
-            out.close();
+            ModelCodec.write(this.C, fileName, config.isSaveAssignments());
+            ModelCache.invalidate(fileName);
         } catch (IOException e) {
             throw new IOException("[!] Errore di I/O");
         }
@@ -0,0 +1,353 @@
+package mining;
+
+import java.util.concurrent.ForkJoinPool;
+
+import data.Data;
+
+/**
+ * Classe LloydIteration che esegue i passi 2 e 3 dell'algoritmo k-means:
+ * assegnamento di ciascuna transazione al centroide più vicino e calcolo dei
+ * nuovi centroidi.
+ * Le transazioni sono divise in blocchi di dimensione fissa, distribuiti tra
+ * parallelism thread; ogni blocco registra le transazioni che hanno cambiato
+ * cluster. I centroidi sono mantenuti in modo incrementale: gli spostamenti
+ * aggiornano le somme e le frequenze dei cluster coinvolti (un thread per
+ * attributo, nell'ordine dei blocchi), per cui il costo del passo 3 è
+ * proporzionale al numero di spostamenti e il risultato non dipende dal numero
+ * di thread.
+ * In modalità accelerata (algoritmo di Hamerly) ogni transazione conserva un
+ * limite superiore alla distanza dal proprio centroide e un limite inferiore
+ * alla distanza da tutti gli altri; quando i limiti, aggiornati con gli
+ * spostamenti dei centroidi, garantiscono che il centroide più vicino non è
+ * cambiato, le distanze della transazione non vengono calcolate. Poiché la
+ * distanza è una metrica l'assegnamento resta esatto.
+ */
+final class LloydIteration {
+    /**
+     * Numero di transazioni in un blocco.
+     */
+    static final int BLOCK_SIZE = 8192;
+    /**
+     * Dataset.
+     */
+    private final Data data;
+    /**
+     * Insieme dei cluster da aggiornare.
+     */
+    private final ClusterSet C;
+    /**
+     * Kernel per il calcolo delle distanze.
+     */
+    private final AssignmentKernel kernel;
+    /**
+     * Pool di thread su cui eseguire i blocchi.
+     */
+    private final ForkJoinPool pool;
+    /**
+     * Numero di cluster.
+     */
+    private final int k;
+    /**
+     * Numero di blocchi.
+     */
+    private final int numberOfBlocks;
+    /**
+     * Numero di thread usati, ciascuno elabora i blocchi lane, lane + lanes, ...
+     */
+    private final int lanes;
+    /**
+     * Spazio di lavoro del kernel per ciascun thread.
+     */
+    private final AssignmentKernel.Scratch[] scratch;
+    /**
+     * Transazioni che hanno cambiato cluster, per blocco.
+     */
+    private final int[][] movedRows;
+    /**
+     * Cluster di provenienza delle transazioni in movedRows, -1 se non erano assegnate.
+     */
+    private final int[][] movedFrom;
+    /**
+     * Numero di transazioni che hanno cambiato cluster, per blocco.
+     */
+    private final int[] blockMoved;
+    /**
+     * Somma delle distanze delle transazioni dal centroide più vicino, per blocco.
+     */
+    private final double[] blockCost;
+    /**
+     * Cluster il cui contenuto è cambiato nell'iterazione corrente.
+     */
+    private final boolean[] touched;
+    /**
+     * Limite superiore alla distanza di ciascuna transazione dal proprio centroide,
+     * null se la modalità accelerata non è attiva.
+     */
+    private final double[] upper;
+    /**
+     * Limite inferiore alla distanza di ciascuna transazione dagli altri centroidi,
+     * null se la modalità accelerata non è attiva.
+     */
+    private final double[] lower;
+    /**
+     * Metà della distanza di ciascun centroide dal centroide più vicino, per l'iterazione corrente.
+     */
+    private double[] halfSeparation;
+    /**
+     * Spostamento massimo di un centroide nell'iterazione corrente.
+     */
+    private double maxShift;
+    /**
+     * Indice del centroide con lo spostamento massimo.
+     */
+    private int maxShiftCluster;
+    /**
+     * Impronta dell'assegnamento corrente, aggiornata a ogni spostamento.
+     */
+    private long assignmentHash;
+    /**
+     * Spostamento massimo tra i centroidi diversi da maxShiftCluster.
+     */
+    private double secondMaxShift;
+
+    /**
+     * Costruttore della classe LloydIteration.
+     * @param data dataset
+     * @param C insieme dei cluster, con i centroidi già inizializzati
+     * @param config parametri di esecuzione (grado di parallelismo e modalità accelerata)
+     * @param pool pool di thread
+     */
+    LloydIteration(Data data, ClusterSet C, KmeansConfig config, ForkJoinPool pool) {
+        this.data = data;
+        this.C = C;
+        this.pool = pool;
+        this.k = C.getNumberOfClusters();
+        this.kernel = new AssignmentKernel(data, k);
+        int n = data.getNumberOfExamples();
+        numberOfBlocks = Math.max(1, (n + BLOCK_SIZE - 1) / BLOCK_SIZE);
+        lanes = Math.min(config.getParallelism(), numberOfBlocks);
+        movedRows = new int[numberOfBlocks][];
+        movedFrom = new int[numberOfBlocks][];
+        for (int b = 0; b < numberOfBlocks; b++) {
+            int size = Math.min(BLOCK_SIZE, n - b * BLOCK_SIZE);
+            movedRows[b] = new int[Math.max(0, size)];
+            movedFrom[b] = new int[Math.max(0, size)];
+        }
+        blockMoved = new int[numberOfBlocks];
+        blockCost = new double[numberOfBlocks];
+        touched = new boolean[k];
+        scratch = new AssignmentKernel.Scratch[lanes];
+        for (int lane = 0; lane < lanes; lane++)
+            scratch[lane] = kernel.newScratch();
+        for (int c = 0; c < k; c++)
+            C.get(c).resetStatistics(data);
+        kernel.loadCentroids(C);
+        upper = config.isAccelerated() ? new double[n] : null;
+        lower = config.isAccelerated() ? new double[n] : null;
+    }
+
+    /**
+     * Esegue una iterazione: assegna ogni transazione al cluster più vicino e
+     * aggiorna i centroidi dei cluster che hanno acquisito o perso transazioni.
+     * @return numero di transazioni che hanno cambiato cluster
+     */
+    int iterate() {
+        if (upper != null)
+            prepareBounds();
+        ParallelTasks.run(pool, lanes, lanes, this::assign);
+        ParallelTasks.run(pool, lanes, data.getNumberOfAttributes(), this::applyMoves);
+
+        int[] counts = C.getCounts();
+        int moved = 0;
+        for (int b = 0; b < numberOfBlocks; b++) {
+            int[] rows = movedRows[b];
+            int[] from = movedFrom[b];
+            int[] assignment = C.getAssignment();
+            for (int m = 0; m < blockMoved[b]; m++) {
+                int to = assignment[rows[m]];
+                if (from[m] >= 0) {
+                    counts[from[m]]--;
+                    touched[from[m]] = true;
+                }
+                counts[to]++;
+                touched[to] = true;
+                assignmentHash += mix(rows[m], to) - mix(rows[m], from[m]);
+            }
+            moved += blockMoved[b];
+        }
+        for (int c = 0; c < k; c++) {
+            if (touched[c]) {
+                C.get(c).updateCentroid(data, counts[c]);
+                touched[c] = false;
+            }
+        }
+        kernel.loadCentroids(C);
+        return moved;
+    }
+
+    /**
+     * Restituisce lo spostamento massimo di un centroide nell'ultima iterazione,
+     * con la stessa distanza usata per l'assegnamento.
+     * @return spostamento massimo
+     */
+    double getLastShift() {
+        double max = 0;
+        for (double shift : kernel.getShifts())
+            max = Math.max(max, shift);
+        return max;
+    }
+
+    /**
+     * Restituisce il costo dell'ultima iterazione: somma delle distanze delle
+     * transazioni dal centroide più vicino, calcolate durante l'assegnamento e
+     * quindi rispetto ai centroidi precedenti all'aggiornamento.
+     * In modalità accelerata le distanze non calcolate sono sostituite dal
+     * limite superiore, per cui il costo è a sua volta un limite superiore.
+     * @return costo dell'ultima iterazione
+     */
+    double getLastCost() {
+        double cost = 0;
+        for (int b = 0; b < numberOfBlocks; b++)
+            cost += blockCost[b];
+        return cost;
+    }
+
+    /**
+     * Restituisce l'impronta dell'assegnamento corrente: somma, su tutte le
+     * transazioni, di un hash della coppia (transazione, cluster), relativa
+     * all'assegnamento iniziale. Due assegnamenti uguali hanno la stessa impronta.
+     * @return impronta dell'assegnamento
+     */
+    long getAssignmentHash() {
+        return assignmentHash;
+    }
+
+    /**
+     * Hash della coppia (transazione, cluster), con la funzione di mescolamento di SplitMix64.
+     * @param row indice di riga
+     * @param cluster indice di cluster, -1 se la transazione non è assegnata
+     * @return hash della coppia
+     */
+    private static long mix(int row, int cluster) {
+        long z = ((long) row << 32 | (cluster & 0xffffffffL)) + 0x9e3779b97f4a7c15L;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Calcola le separazioni tra i centroidi e gli spostamenti massimi usati per
+     * aggiornare i limiti delle transazioni.
+     */
+    private void prepareBounds() {
+        halfSeparation = kernel.computeHalfSeparation();
+        double[] shift = kernel.getShifts();
+        maxShift = 0;
+        maxShiftCluster = 0;
+        secondMaxShift = 0;
+        for (int c = 0; c < k; c++) {
+            if (shift[c] > maxShift) {
+                secondMaxShift = maxShift;
+                maxShift = shift[c];
+                maxShiftCluster = c;
+            } else if (shift[c] > secondMaxShift) {
+                secondMaxShift = shift[c];
+            }
+        }
+    }
+
+    /**
+     * Restituisce il cluster più vicino alla transazione row assegnata al
+     * cluster current, usando i limiti per evitare il calcolo delle distanze
+     * quando possibile.
+     * Il calcolo viene evitato solo se i limiti garantiscono che current è
+     * strettamente più vicino di ogni altro centroide, per cui anche la scelta
+     * a parità di distanza coincide con quella dell'algoritmo non accelerato.
+     * @param row indice di riga
+     * @param current cluster corrente, -1 se la transazione non è assegnata
+     * @param s spazio di lavoro del thread chiamante
+     * @return indice del cluster più vicino
+     */
+    private int nearestWithBounds(int row, int current, AssignmentKernel.Scratch s) {
+        if (current >= 0) {
+            double u = upper[row] + kernel.getShifts()[current];
+            double l = lower[row] - (current == maxShiftCluster ? secondMaxShift : maxShift);
+            double z = Math.max(l, halfSeparation[current]);
+            if (u >= z) {
+                u = kernel.distance(row, s, current);
+            }
+            if (u < z) {
+                upper[row] = u;
+                lower[row] = l;
+                return current;
+            }
+        }
+        int c = kernel.nearest(row, s);
+        upper[row] = s.distance;
+        lower[row] = s.second;
+        return c;
+    }
+
+    /**
+     * Assegna le transazioni dei blocchi elaborati dal thread lane, registrando
+     * quelle che cambiano cluster.
+     * @param lane indice del thread
+     */
+    private void assign(int lane) {
+        int[] assignment = C.getAssignment();
+        AssignmentKernel.Scratch s = scratch[lane];
+        for (int b = lane; b < numberOfBlocks; b += lanes) {
+            int[] rows = movedRows[b];
+            int[] from = movedFrom[b];
+            int moved = 0;
+            double cost = 0;
+            int end = Math.min(assignment.length, (b + 1) * BLOCK_SIZE);
+            for (int i = b * BLOCK_SIZE; i < end; i++) {
+                int c;
+                if (upper != null) {
+                    c = nearestWithBounds(i, assignment[i], s);
+                    cost += upper[i];
+                } else {
+                    c = kernel.nearest(i, s);
+                    cost += s.distance;
+                }
+                if (assignment[i] != c) {
+                    rows[moved] = i;
+                    from[moved] = assignment[i];
+                    assignment[i] = c;
+                    moved++;
+                }
+            }
+            blockMoved[b] = moved;
+            blockCost[b] = cost;
+        }
+    }
+
+    /**
+     * Applica gli spostamenti dell'iterazione alle somme o alle frequenze
+     * dell'attributo di indice attribute, nell'ordine dei blocchi.
+     * @param attribute indice di attributo
+     */
+    private void applyMoves(int attribute) {
+        int[] assignment = C.getAssignment();
+        double[] column = data.getContinuousColumn(attribute);
+        int[] codes = data.getDiscreteColumn(attribute);
+        for (int b = 0; b < numberOfBlocks; b++) {
+            int[] rows = movedRows[b];
+            int[] from = movedFrom[b];
+            for (int m = 0; m < blockMoved[b]; m++) {
+                int row = rows[m];
+                Cluster to = C.get(assignment[row]);
+                if (column != null) {
+                    if (from[m] >= 0)
+                        C.get(from[m]).getSums()[attribute] -= column[row];
+                    to.getSums()[attribute] += column[row];
+                } else {
+                    if (from[m] >= 0)
+                        C.get(from[m]).getFrequencies()[attribute][codes[row]]--;
+                    to.getFrequencies()[attribute][codes[row]]++;
+                }
+            }
+        }
+    }
+}
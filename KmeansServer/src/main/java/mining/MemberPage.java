@@ -0,0 +1,95 @@
+package mining;
+
+import java.io.Serializable;
+
+/**
+ * Classe MemberPage che contiene una pagina delle transazioni di un cluster,
+ * nell'ordine crescente degli indici di riga, con la distanza di ciascuna dal
+ * centroide.
+ */
+public class MemberPage implements Serializable {
+    /**
+     * Indice del cluster.
+     */
+    private final int cluster;
+    /**
+     * Posizione della prima transazione della pagina tra quelle del cluster.
+     */
+    private final int offset;
+    /**
+     * Numero di transazioni del cluster.
+     */
+    private final int total;
+    /**
+     * Valori delle transazioni della pagina, con un valore per attributo.
+     */
+    private final Object[][] rows;
+    /**
+     * Distanza di ciascuna transazione della pagina dal centroide.
+     */
+    private final double[] distances;
+
+    /**
+     * Costruttore di classe.
+     * @param cluster indice del cluster
+     * @param offset posizione della prima transazione della pagina
+     * @param total numero di transazioni del cluster
+     * @param rows valori delle transazioni della pagina
+     * @param distances distanze dal centroide
+     */
+    MemberPage(int cluster, int offset, int total, Object[][] rows, double[] distances) {
+        this.cluster = cluster;
+        this.offset = offset;
+        this.total = total;
+        this.rows = rows;
+        this.distances = distances;
+    }
+
+    /**
+     * Restituisce l'indice del cluster.
+     * @return cluster
+     */
+    public int getCluster() {
+        return cluster;
+    }
+
+    /**
+     * Restituisce la posizione della prima transazione della pagina tra quelle del cluster.
+     * @return offset
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Restituisce il numero di transazioni del cluster.
+     * @return total
+     */
+    public int getTotal() {
+        return total;
+    }
+
+    /**
+     * Restituisce true se il cluster ha altre transazioni dopo questa pagina.
+     * @return true se esiste una pagina successiva
+     */
+    public boolean hasNext() {
+        return offset + rows.length < total;
+    }
+
+    /**
+     * Restituisce i valori delle transazioni della pagina.
+     * @return rows
+     */
+    public Object[][] getRows() {
+        return rows;
+    }
+
+    /**
+     * Restituisce la distanza di ciascuna transazione della pagina dal centroide.
+     * @return distances
+     */
+    public double[] getDistances() {
+        return distances;
+    }
+}
@@ -0,0 +1,126 @@
+package mining;
+
+import java.util.Random;
+
+import data.Data;
+import data.OutOfRangeSampleSize;
+
+/**
+ * Classe MiniBatchKmeansMiner che esegue l'algoritmo k-means a mini-batch.
+ * A ogni iterazione campiona config.getBatchSize() transazioni, le assegna ai
+ * centroidi correnti e sposta ciascun centroide verso le transazioni assegnate,
+ * con un tasso di apprendimento per cluster pari a 1/v, dove v è il numero di
+ * transazioni assegnate al cluster fino a quel momento.
+ * Si ferma quando nessun centroide si sposta più di config.getTolerance() o
+ * dopo config.getMaxIterations() batch.
+ * Estende la classe KmeansMiner.
+ */
+public class MiniBatchKmeansMiner extends KmeansMiner {
+    /**
+     * Costruttore della classe MiniBatchKmeansMiner.
+     * @param k numero di cluster.
+     * @param config parametri di esecuzione.
+     * @throws OutOfRangeSampleSize eccezione per dimensione campione fuori range
+     */
+    public MiniBatchKmeansMiner(int k, KmeansConfig config) throws OutOfRangeSampleSize {
+        super(k, config);
+    }
+
+    /**
+     * Esegue una volta l'algoritmo k-means a mini-batch.
+     * 1.Scelta dei centroidi per k cluster, con la strategia config.getSeeding()
+     * oppure estendendo i centroidi di previous.
+     * 2.Campionamento di un batch e assegnazione delle sue transazioni al
+     * centroide più vicino.
+     * 3.Aggiornamento dei centroidi con le transazioni del batch.
+     * 4.Ripete i passi 2 e 3 finché lo spostamento dei centroidi supera la tolleranza,
+     * per al più config.getMaxIterations() batch.
+     * 5.Assegna tutte le transazioni ai centroidi ottenuti e li ricalcola.
+     * @param data insieme di dati.
+     * @param rand generatore di numeri casuali dell'esecuzione.
+     * @param previous cluster da cui partire, copiandone i centroidi, oppure null.
+     * @return numero di iterazioni, compresa quella finale su tutte le transazioni.
+     * @throws OutOfRangeSampleSize eccezione per dimensione campione fuori range
+     */
+    @Override
+    int run(Data data, Random rand, ClusterSet previous) throws OutOfRangeSampleSize {
+        ClusterSet C = getC();
+        KmeansConfig config = getConfig();
+        int k = C.getNumberOfClusters();
+        int n = data.getNumberOfExamples();
+        long start = System.nanoTime();
+        // STEP 1
+        C.initializeCentroids(data, config, rand, previous);
+        AssignmentKernel kernel = new AssignmentKernel(data, k);
+        AssignmentKernel.Scratch scratch = kernel.newScratch();
+        for (int c = 0; c < k; c++)
+            C.get(c).resetStatistics(data);
+        kernel.loadCentroids(C);
+
+        int[] batch = new int[Math.min(config.getBatchSize(), n)];
+        int[] nearest = new int[batch.length];
+        int[] seen = new int[k];
+        int numberOfIterations = 0;
+        double maxShift;
+        do {
+            numberOfIterations++;
+            // STEP 2
+            double cost = 0;
+            for (int x = 0; x < batch.length; x++) {
+                batch[x] = batch.length == n ? x : rand.nextInt(n);
+                nearest[x] = kernel.nearest(batch[x], scratch);
+                cost += scratch.distance;
+            }
+            // STEP 3
+            for (int x = 0; x < batch.length; x++) {
+                int c = nearest[x];
+                learn(data, C.get(c), batch[x], ++seen[c]);
+            }
+            for (int c = 0; c < k; c++)
+                C.get(c).setCentroid(data);
+            kernel.loadCentroids(C);
+            maxShift = 0;
+            for (double shift : kernel.getShifts())
+                maxShift = Math.max(maxShift, shift);
+            // costo del batch riportato all'intero dataset
+            reportProgress(numberOfIterations, -1, maxShift, cost * n / batch.length, start);
+            checkCancelled();
+        } while (maxShift > config.getTolerance() && numberOfIterations < config.getMaxIterations());
+        setStopReason(maxShift > config.getTolerance() ? StopReason.MAX_ITERATIONS : StopReason.CENTROID_SHIFT);
+
+        // STEP 5
+        LloydIteration iteration = new LloydIteration(data, C, config, getPool());
+        int moved = iteration.iterate();
+        reportProgress(numberOfIterations + 1, moved, iteration.getLastShift(), iteration.getLastCost(), start);
+        return numberOfIterations + 1;
+    }
+
+    /**
+     * Sposta il centroide di cluster verso la transazione row con tasso 1/seen.
+     * Per un attributo continuo il valore è la media mobile delle transazioni
+     * assegnate; per un attributo discreto le frequenze decadute con tasso 1/seen
+     * sono proporzionali ai conteggi, per cui il valore è il codice più contato
+     * (a parità di conteggio prevale il valore minore del dominio).
+     * @param data dataset
+     * @param cluster cluster a cui è assegnata la transazione
+     * @param row indice di riga
+     * @param seen numero di transazioni assegnate al cluster, compresa row
+     */
+    private static void learn(Data data, Cluster cluster, int row, int seen) {
+        double[] values = cluster.getValues();
+        int[][] frequencies = cluster.getFrequencies();
+        for (int a = 0; a < values.length; a++) {
+            double[] column = data.getContinuousColumn(a);
+            if (column != null) {
+                values[a] += (column[row] - values[a]) / seen;
+            } else {
+                int[] frequency = frequencies[a];
+                int code = data.getDiscreteColumn(a)[row];
+                int mode = (int) values[a];
+                frequency[code]++;
+                if (frequency[code] > frequency[mode] || (frequency[code] == frequency[mode] && code < mode))
+                    values[a] = code;
+            }
+        }
+    }
+}
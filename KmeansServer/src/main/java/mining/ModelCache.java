@@ -0,0 +1,196 @@
+package mining;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Classe ModelCache che condivide tra le sessioni dei client i modelli caricati
+ * da file, indicizzati per percorso canonico del file.
+ * Ogni modello è associato alla data di ultima modifica e alla dimensione del
+ * file al momento del caricamento: se il file cambia, il modello viene
+ * ricaricato alla richiesta successiva.
+ * Le istanze di KmeansMiner restituite non vanno modificate e possono essere
+ * lette da più sessioni contemporaneamente.
+ * Le richieste concorrenti di un modello non ancora presente attendono un
+ * unico caricamento. Oltre maxEntries modelli vengono scartati quelli usati
+ * meno di recente.
+ */
+public final class ModelCache {
+    /**
+     * Modelli in cache, dal meno al più recentemente usato.
+     */
+    private static final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    /**
+     * Numero massimo di modelli in cache.
+     */
+    private static int maxEntries = 64;
+    /**
+     * Numero di richieste servite dalla cache.
+     */
+    private static final AtomicLong hits = new AtomicLong();
+    /**
+     * Numero di richieste che hanno letto il modello dal file.
+     */
+    private static final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Modello in cache o in caricamento.
+     */
+    private static final class Entry {
+        /**
+         * Caricamento del modello.
+         */
+        final FutureTask<KmeansMiner> load;
+        /**
+         * Data di ultima modifica del file, in millisecondi.
+         */
+        final long modified;
+        /**
+         * Dimensione del file, in byte.
+         */
+        final long size;
+
+        /**
+         * Costruttore di classe.
+         * @param load caricamento del modello
+         * @param modified data di ultima modifica del file
+         * @param size dimensione del file
+         */
+        Entry(FutureTask<KmeansMiner> load, long modified, long size) {
+            this.load = load;
+            this.modified = modified;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Costruttore privato: la classe ha solo metodi statici.
+     */
+    private ModelCache() {
+    }
+
+    /**
+     * Restituisce il modello salvato nel file fileName, leggendolo dal file se
+     * non è in cache o se il file è cambiato dall'ultimo caricamento.
+     * @param fileName nome del file
+     * @return modello condiviso, da non modificare
+     * @throws IOException eccezione per errore di I/O
+     * @throws ClassNotFoundException eccezione per errore di cast
+     */
+    public static KmeansMiner get(String fileName) throws IOException, ClassNotFoundException {
+        String key = new File(fileName).getCanonicalPath();
+        BasicFileAttributes attributes = Files.readAttributes(Paths.get(key), BasicFileAttributes.class);
+        long modified = attributes.lastModifiedTime().toMillis();
+        long size = attributes.size();
+        Entry entry;
+        boolean owner = false;
+        synchronized (ModelCache.class) {
+            entry = entries.get(key);
+            if (entry != null && (entry.modified != modified || entry.size != size)) {
+                entries.remove(key);
+                entry = null;
+            }
+            if (entry == null) {
+                entry = new Entry(new FutureTask<KmeansMiner>(() -> new KmeansMiner(key)), modified, size);
+                entries.put(key, entry);
+                owner = true;
+                evict();
+            }
+        }
+        if (owner)
+            entry.load.run();
+
+        try {
+            KmeansMiner miner = entry.load.get();
+            if (owner)
+                misses.incrementAndGet();
+            else
+                hits.incrementAndGet();
+            return miner;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Caricamento interrotto", e);
+        } catch (ExecutionException e) {
+            if (owner)
+                remove(key, entry);
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof ClassNotFoundException)
+                throw (ClassNotFoundException) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Scarta il modello del file fileName, ad esempio dopo averlo sovrascritto.
+     * @param fileName nome del file
+     */
+    public static void invalidate(String fileName) {
+        try {
+            String key = new File(fileName).getCanonicalPath();
+            synchronized (ModelCache.class) {
+                entries.remove(key);
+            }
+        } catch (IOException e) {
+            // il file non è risolvibile, quindi non può essere in cache
+        }
+    }
+
+    /**
+     * Scarta i modelli usati meno di recente finché sono più di maxEntries.
+     */
+    private static synchronized void evict() {
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (entries.size() > maxEntries && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    /**
+     * Rimuove dalla cache la voce entry, se è ancora associata a key.
+     * @param key percorso canonico del file
+     * @param entry voce da rimuovere
+     */
+    private static synchronized void remove(String key, Entry entry) {
+        if (entries.get(key) == entry)
+            entries.remove(key);
+    }
+
+    /**
+     * Imposta il numero massimo di modelli in cache.
+     * @param entries numero di modelli, non negativo; con 0 nessun modello viene conservato
+     */
+    public static synchronized void setMaxEntries(int entries) {
+        if (entries < 0)
+            throw new IllegalArgumentException("La dimensione della cache non può essere negativa");
+        maxEntries = entries;
+        evict();
+    }
+
+    /**
+     * Restituisce il numero di richieste servite dalla cache.
+     * @return hits
+     */
+    public static long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Restituisce il numero di richieste che hanno letto il modello dal file.
+     * @return misses
+     */
+    public static long getMisses() {
+        return misses.get();
+    }
+}
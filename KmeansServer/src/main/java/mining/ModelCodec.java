@@ -0,0 +1,176 @@
+package mining;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import data.Data;
+import data.DataSnapshot;
+import data.OutOfRangeSampleSize;
+
+/**
+ * Classe ModelCodec che salva e carica un insieme di cluster in formato binario.
+ * Il file contiene, nell'ordine: il numero magico MAGIC e la versione del
+ * formato; lo schema degli attributi, scritto da DataSnapshot.writeSchema; il
+ * numero di cluster e i valori primitivi di ciascun centroide; un byte che
+ * indica se segue l'assegnamento delle transazioni e, in tal caso, il numero di
+ * transazioni e, per ogni cluster, il numero dei membri e gli indici di riga
+ * crescenti, codificati come differenze dal precedente in varint.
+ * I file salvati con la serializzazione Java dalle versioni precedenti del
+ * server non iniziano con MAGIC e sono rifiutati come formato non supportato.
+ */
+final class ModelCodec {
+    /**
+     * Numero magico all'inizio del file: "KMMD".
+     */
+    private static final int MAGIC = 0x4B4D4D44;
+    /**
+     * Versione del formato.
+     */
+    private static final int VERSION = 1;
+    /**
+     * Dimensione dei buffer di lettura e scrittura.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Costruttore privato: la classe ha solo metodi statici.
+     */
+    private ModelCodec() {
+    }
+
+    /**
+     * Salva C nel file fileName.
+     * @param C insieme dei cluster
+     * @param fileName nome del file
+     * @param withAssignment true per salvare anche l'assegnamento delle transazioni
+     * @throws IOException eccezione per errore di I/O
+     */
+    static void write(ClusterSet C, String fileName, boolean withAssignment) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                DataOutputStream out = new DataOutputStream(
+                        new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            int k = C.getNumberOfClusters();
+            DataSnapshot.writeSchema(out, Data.schemaOf(C.get(0).getCentroid()));
+            out.writeInt(k);
+            for (int c = 0; c < k; c++) {
+                for (double v : C.get(c).getValues())
+                    out.writeDouble(v);
+            }
+            int[] assignment = C.getAssignment();
+            if (withAssignment && assignment != null) {
+                out.writeByte(1);
+                writeVarint(out, assignment.length);
+                for (int[] members : C.members()) {
+                    writeVarint(out, members.length);
+                    int previous = 0;
+                    for (int id : members) {
+                        writeVarint(out, id - previous);
+                        previous = id;
+                    }
+                }
+            } else {
+                out.writeByte(0);
+            }
+        }
+    }
+
+    /**
+     * Carica l'insieme di cluster salvato nel file fileName.
+     * @param fileName nome del file
+     * @return insieme dei cluster
+     * @throws IOException eccezione per errore di I/O o file non valido
+     */
+    static ClusterSet read(String fileName) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+                DataInputStream in = new DataInputStream(
+                        new BufferedInputStream(Channels.newInputStream(channel), BUFFER_SIZE))) {
+            if (in.readInt() != MAGIC)
+                throw new IOException("Formato del modello non supportato: " + fileName);
+            int version = in.readInt();
+            if (version != VERSION)
+                throw new IOException("Versione del modello non supportata: " + version);
+            Data schema = DataSnapshot.readSchema(in);
+            int m = schema.getNumberOfAttributes();
+            int k = in.readInt();
+            if (k < 1)
+                throw new IOException("Modello non valido: numero di cluster " + k);
+            double[][] values = new double[k][m];
+            for (int c = 0; c < k; c++) {
+                for (int j = 0; j < m; j++) {
+                    double v = in.readDouble();
+                    if (schema.getDiscreteColumn(j) != null && (Double.isNaN(v) || v != Math.rint(v)
+                            || v < 0 || v >= schema.getNumberOfDistinctValues(j)))
+                        throw new IOException("Modello non valido: codice fuori dal dizionario");
+                    values[c][j] = v;
+                }
+            }
+            int[] assignment = null;
+            if (in.readByte() != 0) {
+                int n = readVarint(in);
+                assignment = new int[n];
+                Arrays.fill(assignment, -1);
+                for (int c = 0; c < k; c++) {
+                    int count = readVarint(in);
+                    int id = 0;
+                    for (int x = 0; x < count; x++) {
+                        id += readVarint(in);
+                        if (id >= n || assignment[id] >= 0)
+                            throw new IOException("Modello non valido: assegnamento non coerente");
+                        assignment[id] = c;
+                    }
+                }
+            }
+            return ClusterSet.restore(schema, values, assignment);
+        } catch (OutOfRangeSampleSize e) {
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    /**
+     * Scrive value, non negativo, in varint: 7 bit per byte, a partire dai
+     * meno significativi, con il bit più alto a 1 se seguono altri byte.
+     * @param out flusso di destinazione
+     * @param value valore non negativo
+     * @throws IOException eccezione per errore di I/O
+     */
+    private static void writeVarint(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    /**
+     * Legge un intero non negativo scritto da writeVarint.
+     * @param in flusso di origine
+     * @return valore letto
+     * @throws IOException eccezione per errore di I/O o varint non valido
+     */
+    private static int readVarint(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (value < 0)
+                    throw new IOException("Varint non valido");
+                return value;
+            }
+        }
+        throw new IOException("Varint non valido");
+    }
+}
@@ -0,0 +1,59 @@
+package mining;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.IntConsumer;
+
+/**
+ * Classe ParallelTasks che esegue un insieme di attività indicizzate su un pool
+ * di thread e ne attende la terminazione.
+ */
+final class ParallelTasks {
+    /**
+     * Costruttore privato: la classe offre solo metodi statici.
+     */
+    private ParallelTasks() {
+    }
+
+    /**
+     * Esegue task per gli indici da 0 a count escluso.
+     * Con lanes pari a 1, o con una sola attività, le esegue in ordine sul thread chiamante.
+     * @param pool pool di thread
+     * @param lanes numero di thread richiesti
+     * @param count numero di attività
+     * @param task attività da eseguire, riceve il proprio indice
+     * @throws CancellationException se il thread chiamante viene interrotto
+     * durante l'attesa o un'attività è stata annullata
+     */
+    static void run(ForkJoinPool pool, int lanes, int count, IntConsumer task) {
+        if (lanes == 1 || count == 1) {
+            for (int i = 0; i < count; i++)
+                task.accept(i);
+            return;
+        }
+        List<Callable<Void>> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final int index = i;
+            tasks.add(() -> {
+                task.accept(index);
+                return null;
+            });
+        }
+        try {
+            for (Future<Void> f : pool.invokeAll(tasks))
+                f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Esecuzione annullata");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof CancellationException)
+                throw (CancellationException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
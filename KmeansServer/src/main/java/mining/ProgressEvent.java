@@ -0,0 +1,113 @@
+package mining;
+
+import java.io.Serializable;
+
+/**
+ * Classe ProgressEvent che descrive l'avanzamento dell'algoritmo k-means al
+ * termine di un'iterazione.
+ */
+public final class ProgressEvent implements Serializable {
+    /**
+     * Indice dell'esecuzione indipendente, 0 se config.getRestarts() è 1.
+     */
+    private final int restart;
+    /**
+     * Numero dell'iterazione, a partire da 1.
+     */
+    private final int iteration;
+    /**
+     * Numero di transazioni che hanno cambiato cluster, -1 per le iterazioni a mini-batch.
+     */
+    private final int moved;
+    /**
+     * Spostamento massimo di un centroide.
+     */
+    private final double shift;
+    /**
+     * Millisecondi trascorsi dall'inizio dell'esecuzione.
+     */
+    private final long elapsedMillis;
+    /**
+     * Costo corrente: somma delle distanze delle transazioni dal centroide a cui
+     * sono assegnate.
+     */
+    private final double cost;
+
+    /**
+     * Costruttore di classe.
+     * @param restart indice dell'esecuzione indipendente
+     * @param iteration numero dell'iterazione
+     * @param moved numero di transazioni che hanno cambiato cluster
+     * @param shift spostamento massimo di un centroide
+     * @param elapsedMillis millisecondi trascorsi dall'inizio dell'esecuzione
+     * @param cost costo corrente
+     */
+    ProgressEvent(int restart, int iteration, int moved, double shift, long elapsedMillis, double cost) {
+        this.restart = restart;
+        this.iteration = iteration;
+        this.moved = moved;
+        this.shift = shift;
+        this.elapsedMillis = elapsedMillis;
+        this.cost = cost;
+    }
+
+    /**
+     * Restituisce l'indice dell'esecuzione indipendente.
+     * @return restart
+     */
+    public int getRestart() {
+        return restart;
+    }
+
+    /**
+     * Restituisce il numero dell'iterazione.
+     * @return iteration
+     */
+    public int getIteration() {
+        return iteration;
+    }
+
+    /**
+     * Restituisce il numero di transazioni che hanno cambiato cluster, -1 per
+     * le iterazioni a mini-batch.
+     * @return moved
+     */
+    public int getMoved() {
+        return moved;
+    }
+
+    /**
+     * Restituisce lo spostamento massimo di un centroide.
+     * @return shift
+     */
+    public double getShift() {
+        return shift;
+    }
+
+    /**
+     * Restituisce i millisecondi trascorsi dall'inizio dell'esecuzione.
+     * @return elapsedMillis
+     */
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * Restituisce il costo corrente. Con la modalità accelerata è un limite
+     * superiore al costo; per le iterazioni a mini-batch è stimato dal batch.
+     * @return cost
+     */
+    public double getCost() {
+        return cost;
+    }
+
+    /**
+     * Restituisce una stringa che descrive l'avanzamento.
+     * @return descrizione dell'avanzamento
+     */
+    public String toString() {
+        return "Iterazione " + iteration + (restart > 0 ? " (esecuzione " + restart + ")" : "")
+                + (moved >= 0 ? ": spostate " + moved + "," : ":") + " spostamento " + shift + ", costo " + cost
+                + ", " + elapsedMillis + " ms";
+    }
+}
@@ -0,0 +1,17 @@
+package mining;
+
+/**
+ * Interfaccia ProgressListener per ricevere l'avanzamento dell'algoritmo
+ * k-means, con un ProgressEvent al termine di ciascuna iterazione.
+ * Il metodo è chiamato dal thread che esegue l'algoritmo, per cui deve
+ * terminare subito senza operazioni bloccanti; con più esecuzioni
+ * indipendenti (config.getRestarts() maggiore di 1) può essere chiamato da
+ * più thread contemporaneamente.
+ */
+public interface ProgressListener {
+    /**
+     * Riceve l'avanzamento dell'iterazione appena terminata.
+     * @param event avanzamento
+     */
+    void progress(ProgressEvent event);
+}
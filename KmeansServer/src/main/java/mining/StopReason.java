@@ -0,0 +1,49 @@
+package mining;
+
+/**
+ * Motivo per cui l'algoritmo k-means ha terminato le iterazioni.
+ */
+public enum StopReason {
+    /**
+     * Nessuna transazione ha cambiato cluster.
+     */
+    CONVERGED("convergenza"),
+    /**
+     * La frazione di transazioni che hanno cambiato cluster è sotto la soglia minima.
+     */
+    MOVED_FRACTION("frazione di transazioni spostate sotto la soglia"),
+    /**
+     * Nessun centroide si è spostato più della tolleranza.
+     */
+    CENTROID_SHIFT("spostamento dei centroidi sotto la tolleranza"),
+    /**
+     * L'assegnamento coincide con quello di una iterazione precedente.
+     */
+    CYCLE("assegnamento ciclico"),
+    /**
+     * È stato raggiunto il numero massimo di iterazioni.
+     */
+    MAX_ITERATIONS("raggiunto il numero massimo di iterazioni");
+
+    /**
+     * Descrizione del motivo, inviata al client.
+     */
+    private final String description;
+
+    /**
+     * Costruttore di StopReason.
+     * @param description descrizione del motivo
+     */
+    StopReason(String description) {
+        this.description = description;
+    }
+
+    /**
+     * Restituisce la descrizione del motivo.
+     * @return descrizione
+     */
+    @Override
+    public String toString() {
+        return description;
+    }
+}
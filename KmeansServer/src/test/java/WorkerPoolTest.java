@@ -0,0 +1,90 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+import data.ContinuousAttribute;
+import data.ContinuousItem;
+import data.Data;
+import data.Tuple;
+import mining.KmeansConfig;
+import mining.KmeansMiner;
+
+/**
+ * Verifica che un'elaborazione di WorkerPool annullata liberi il thread che la esegue.
+ */
+class WorkerPoolTest {
+    /**
+     * Crea un dataset di n transazioni casuali con due attributi continui.
+     * @param n numero di transazioni
+     * @return dataset
+     */
+    private static Data randomData(int n) {
+        ContinuousAttribute x = new ContinuousAttribute("x", 0, 0, 100);
+        ContinuousAttribute y = new ContinuousAttribute("y", 1, 0, 100);
+        Tuple schema = new Tuple(2) {
+            {
+                add(new ContinuousItem(x, 0), 0);
+                add(new ContinuousItem(y, 0), 1);
+            }
+        };
+        Random rand = new Random(42);
+        Object[][] rows = new Object[n][];
+        for (int i = 0; i < n; i++)
+            rows[i] = new Object[] {rand.nextDouble() * 100, rand.nextDouble() * 100};
+        return Data.schemaOf(schema).encode(rows);
+    }
+
+    /**
+     * Quando l'invio dell'avanzamento al client fallisce, l'algoritmo termina
+     * con CancellationException entro l'iterazione in corso, invece di
+     * proseguire fino alla convergenza.
+     */
+    @Test
+    void failingProgressSinkStopsTheJobWithinOneIteration() throws Exception {
+        WorkerPool.configure(1, 1);
+        Data data = randomData(2000);
+        KmeansConfig config = new KmeansConfig();
+        config.setParallelism(1);
+        config.setDetectCycles(false);
+        KmeansMiner miner = KmeansMiner.newMiner(8, config);
+        AtomicInteger events = new AtomicInteger();
+        CountDownLatch never = new CountDownLatch(1);
+        // la prima iterazione resta in corso finché l'elaborazione non viene annullata
+        miner.setProgressListener(event -> {
+            events.incrementAndGet();
+            try {
+                never.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        AtomicReference<Throwable> outcome = new AtomicReference<Throwable>();
+        CountDownLatch finished = new CountDownLatch(1);
+        assertThrows(IOException.class, () -> WorkerPool.call(() -> {
+            try {
+                return miner.kmeans(data);
+            } catch (RuntimeException e) {
+                outcome.set(e);
+                throw e;
+            } finally {
+                finished.countDown();
+            }
+        }, 10, () -> {
+            throw new IOException("Client disconnesso");
+        }));
+
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        assertTrue(outcome.get() instanceof CancellationException);
+        assertEquals(1, events.get());
+    }
+}
@@ -0,0 +1,30 @@
+package data;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Verifica che RowIndex ritrovi le transazioni con lo stesso hash.
+ */
+class RowIndexTest {
+	/**
+	 * Due transazioni che differiscono solo per valori discreti con lo stesso
+	 * String.hashCode() ("Aa" e "BB") hanno lo stesso hash, ma restano
+	 * entrambe raggiungibili dall'indice.
+	 */
+	@Test
+	void collidingRowsAreBothFound() {
+		Data data = new Data(Arrays.<Attribute>asList(new ContinuousAttribute("x", 0, 0, 10),
+				new DiscreteAttribute("s", 1, new String[] {"Aa", "BB"})),
+				new double[][] {{1, 1}, null}, new int[][] {null, {0, 1}}, 2, null, null);
+		RowIndex index = new RowIndex(data);
+
+		assertEquals(index.hash(0), index.hash(1));
+		assertEquals(0, index.find(index.hash(0), i -> data.getAttributeValue(i, 1).equals("Aa")));
+		assertEquals(1, index.find(index.hash(1), i -> data.getAttributeValue(i, 1).equals("BB")));
+		assertEquals(-1, index.find(index.hash(1), i -> false));
+	}
+}